@@ -0,0 +1,318 @@
+package aaa;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+
+// 预约热点操作的基准测试：addAppointment（包括开启快照和发布变化事件）、addAppointments、cancelAppointment（包括候补转正和不存在的手机号）、findAppointmentsByName、printExistingAppointments、Appointment.printDetails
+// 输出为 CSV，方便与上一次的结果比较
+// 用法：java aaa.AppointmentBenchmark [规模列表，例如 1000,100000,10000000] [测量轮数] [线程数] [heap|columnar|offheap]
+// 10M 规模需要足够的堆，例如 -Xmx4g
+public class AppointmentBenchmark {
+    private static final int SLOTS_PER_DAY = 24 * 60 / Appointment.SLOT_MINUTES;
+    private static final int WARMUP_ROUNDS = 2;
+
+    // 基准测试中的一项操作：prepare 负责准备数据（不计时），返回的 Measured 才是被计时的部分
+    private interface Workload {
+        Measured prepare(Appointment[] fixture, int threads);
+    }
+
+    private interface Measured {
+        void run() throws InterruptedException;
+    }
+
+    // 丢弃所有输出，避免控制台 I/O 掩盖被测代码本身的开销
+    private static final PrintStream NULL_OUT = new PrintStream(OutputStream.nullOutputStream());
+
+    // 单线程测试使用的存储引擎
+    private static String store;
+    private static final ProfessionalRegistry roster = new ProfessionalRegistry();
+
+    public static void main(String[] args) throws InterruptedException {
+        int[] sizes = parseSizes(args.length > 0 ? args[0] : "1000,100000");
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        store = args.length > 3 ? args[3] : "heap";
+
+        PrintStream out = System.out;
+        out.println("benchmark,threads,size,rounds,ops,ns_per_op,ops_per_sec");
+        for (int size : sizes) {
+            Appointment[] fixture = fixture(size);
+            report(out, "addAppointment", 1, fixture, rounds, AppointmentBenchmark::add);
+            report(out, "addAppointment.events", 1, fixture, rounds, AppointmentBenchmark::addWithEvents);
+            report(out, "addAppointment.snapshots", 1, fixture, rounds, AppointmentBenchmark::addWithSnapshots);
+            report(out, "addAppointments", 1, fixture, rounds, AppointmentBenchmark::addBatch);
+            report(out, "cancelAppointment", 1, fixture, rounds, AppointmentBenchmark::cancel);
+            report(out, "cancelAppointment.waitlist", 1, fixture, rounds, AppointmentBenchmark::cancelWaitlisted);
+            report(out, "cancelAppointment.miss", 1, fixture, rounds, (f, t) -> cancelMiss(f, false));
+            report(out, "cancelAppointment.miss.filter", 1, fixture, rounds, (f, t) -> cancelMiss(f, true));
+            report(out, "findAppointmentsByName", 1, fixture, rounds, AppointmentBenchmark::findByName);
+            report(out, "printExistingAppointments", 1, fixture, rounds, AppointmentBenchmark::printAll);
+            report(out, "Appointment.printDetails", 1, fixture, rounds, AppointmentBenchmark::printDetails);
+            report(out, "concurrent.addAppointment", threads, fixture, rounds, AppointmentBenchmark::concurrentAdd);
+            report(out, "concurrent.addAppointment.statistics", threads, fixture, rounds,
+                    AppointmentBenchmark::concurrentAddWithStatistics);
+            report(out, "concurrent.cancelAppointment", threads, fixture, rounds, AppointmentBenchmark::concurrentCancel);
+        }
+    }
+
+    private static void report(PrintStream out, String name, int threads, Appointment[] fixture, int rounds, Workload workload)
+            throws InterruptedException {
+        System.setOut(NULL_OUT);
+        try {
+            for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                workload.prepare(fixture, threads).run();
+            }
+            long nanos = 0;
+            for (int i = 0; i < rounds; i++) {
+                Measured measured = workload.prepare(fixture, threads);
+                long start = System.nanoTime();
+                measured.run();
+                nanos += System.nanoTime() - start;
+            }
+            long ops = (long) fixture.length * rounds;
+            out.printf("%s,%d,%d,%d,%d,%.1f,%.0f%n", name, threads, fixture.length, rounds, ops,
+                    (double) nanos / ops, ops * 1e9 / nanos);
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    private static Measured add(Appointment[] fixture, int threads) {
+        AppointmentManager manager = newManager(fixture.length);
+        return () -> {
+            for (Appointment appointment : fixture) {
+                manager.addAppointment(appointment);
+            }
+        };
+    }
+
+    // 开启快照后写操作需要额外记录版本
+    private static Measured addWithSnapshots(Appointment[] fixture, int threads) {
+        AppointmentManager manager = newManager(fixture.length);
+        manager.enableSnapshots();
+        return () -> {
+            for (Appointment appointment : fixture) {
+                manager.addAppointment(appointment);
+            }
+        };
+    }
+
+    // 发布变化事件，唯一的订阅者从不 request，缓冲区满后每个事件都被丢弃：模拟卡住的消费者
+    private static Measured addWithEvents(Appointment[] fixture, int threads) {
+        AppointmentManager manager = newManager(fixture.length);
+        AppointmentEventPublisher events = AppointmentEventPublisher.attach(manager, 1024);
+        events.subscribe(new Flow.Subscriber<AppointmentEvent>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+            }
+
+            @Override
+            public void onNext(AppointmentEvent item) {
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+        return () -> {
+            for (Appointment appointment : fixture) {
+                manager.addAppointment(appointment);
+            }
+            events.close();
+        };
+    }
+
+    private static Measured addBatch(Appointment[] fixture, int threads) {
+        AppointmentManager manager = newManager(16);
+        List<Appointment> batch = Arrays.asList(fixture);
+        return () -> manager.addAppointments(batch);
+    }
+
+    private static Measured cancel(Appointment[] fixture, int threads) {
+        AppointmentManager manager = filled(fixture);
+        return () -> {
+            for (int i = fixture.length - 1; i >= 0; i--) {
+                manager.cancelAppointment(fixture[i].getMobile());
+            }
+        };
+    }
+
+    // 每个预约的时段都有一个候补，取消时转正
+    private static Measured cancelWaitlisted(Appointment[] fixture, int threads) {
+        AppointmentManager manager = filled(fixture);
+        for (int i = 0; i < fixture.length; i++) {
+            Appointment booked = fixture[i];
+            manager.addToWaitlist(new Appointment("Waiting " + i, String.valueOf(3_000_000_000L + i),
+                    booked.getTimeSlot(), booked.getHealthProfessional()), i % 3);
+        }
+        return () -> {
+            for (int i = fixture.length - 1; i >= 0; i--) {
+                manager.cancelAppointment(fixture[i].getMobile());
+            }
+        };
+    }
+
+    // 取消不存在的手机号，filter 为 true 时开启手机号过滤器（误判率 1%）
+    private static Measured cancelMiss(Appointment[] fixture, boolean filter) {
+        AppointmentManager manager = filled(fixture);
+        if (filter) {
+            manager.enableMobileFilter(fixture.length, 0.01);
+        }
+        // 随机的手机号，与 fixture 中的不重叠；连续的号码在 HashMap 中也是连续的桶，会让不开过滤器时的结果偏快
+        Random random = new Random(7);
+        String[] misses = new String[fixture.length];
+        for (int i = 0; i < misses.length; i++) {
+            misses[i] = String.valueOf(2_000_000_000L + random.nextInt(1_000_000_000));
+        }
+        return () -> {
+            for (String mobile : misses) {
+                manager.cancelAppointment(mobile);
+            }
+        };
+    }
+
+    // 用去掉最后一个字符的姓名做前缀查找，最多返回 10 个
+    private static Measured findByName(Appointment[] fixture, int threads) {
+        AppointmentManager manager = filled(fixture);
+        manager.enableNameIndex();
+        String[] prefixes = new String[fixture.length];
+        for (int i = 0; i < fixture.length; i++) {
+            String name = fixture[i].getPatientName().toUpperCase();
+            prefixes[i] = name.substring(0, name.length() - 1);
+        }
+        return () -> {
+            for (String prefix : prefixes) {
+                manager.findAppointmentsByName(prefix, 10);
+            }
+        };
+    }
+
+    private static Measured printAll(Appointment[] fixture, int threads) {
+        AppointmentManager manager = filled(fixture);
+        return manager::printExistingAppointments;
+    }
+
+    private static Measured printDetails(Appointment[] fixture, int threads) {
+        return () -> {
+            for (Appointment appointment : fixture) {
+                appointment.printDetails();
+            }
+        };
+    }
+
+    private static Measured concurrentAdd(Appointment[] fixture, int threads) {
+        ConcurrentAppointmentManager manager = new ConcurrentAppointmentManager();
+        return () -> parallel(fixture, threads, manager::addAppointment);
+    }
+
+    private static Measured concurrentAddWithStatistics(Appointment[] fixture, int threads) {
+        ConcurrentAppointmentManager manager = new ConcurrentAppointmentManager();
+        manager.addListener(new AppointmentStatistics());
+        return () -> parallel(fixture, threads, manager::addAppointment);
+    }
+
+    private static Measured concurrentCancel(Appointment[] fixture, int threads) {
+        ConcurrentAppointmentManager manager = new ConcurrentAppointmentManager();
+        for (Appointment appointment : fixture) {
+            manager.addAppointment(appointment);
+        }
+        return () -> parallel(fixture, threads, appointment -> manager.cancelAppointment(appointment.getMobile()));
+    }
+
+    private static AppointmentManager newManager(int size) {
+        switch (store) {
+            case "columnar":
+                return new AppointmentManager(new ColumnarAppointmentStore(roster::get, size));
+            case "offheap":
+                return new AppointmentManager(new OffHeapAppointmentStore(roster::get, size));
+            default:
+                return new AppointmentManager();
+        }
+    }
+
+    private static AppointmentManager filled(Appointment[] fixture) {
+        AppointmentManager manager = newManager(fixture.length);
+        for (Appointment appointment : fixture) {
+            manager.addAppointment(appointment);
+        }
+        return manager;
+    }
+
+    private interface Action {
+        void apply(Appointment appointment);
+    }
+
+    // 将 fixture 平均分给各个线程，每个线程处理连续的一段
+    private static void parallel(Appointment[] fixture, int threads, Action action) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        int chunk = (fixture.length + threads - 1) / threads;
+        for (int t = 0; t < threads; t++) {
+            int from = t * chunk;
+            int to = Math.min(fixture.length, from + chunk);
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = from; i < to; i++) {
+                    action.apply(fixture[i]);
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+    }
+
+    // 生成 size 个互不冲突的预约：每个医生每天 SLOTS_PER_DAY 个时段，手机号各不相同，顺序随机打乱
+    private static Appointment[] fixture(int size) {
+        Appointment[] fixture = new Appointment[size];
+        String[] slots = new String[SLOTS_PER_DAY];
+        for (int s = 0; s < SLOTS_PER_DAY; s++) {
+            int minute = s * Appointment.SLOT_MINUTES;
+            slots[s] = String.format("%02d:%02d", minute / 60, minute % 60);
+        }
+        HealthProfessional professional = null;
+        for (int i = 0; i < size; i++) {
+            if (i % SLOTS_PER_DAY == 0) {
+                int id = i / SLOTS_PER_DAY;
+                professional = id % 2 == 0
+                        ? roster.generalPractitioner(id, "Dr. " + id, "General Medicine", "Primary Care")
+                        : roster.specialist(id, "Dr. " + id, "Cardiology", "Cardiologist");
+            }
+            fixture[i] = new Appointment("Patient " + i, String.valueOf(1_000_000_000L + i), slots[i % SLOTS_PER_DAY], professional);
+        }
+        Random random = new Random(42);
+        for (int i = size - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            Appointment tmp = fixture[i];
+            fixture[i] = fixture[j];
+            fixture[j] = tmp;
+        }
+        return fixture;
+    }
+
+    private static int[] parseSizes(String value) {
+        String[] parts = value.split(",");
+        int[] sizes = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            sizes[i] = Integer.parseInt(parts[i].trim());
+        }
+        return sizes;
+    }
+}
@@ -0,0 +1,239 @@
+package aaa;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.IntFunction;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// 按日期分区的预约日历：每天一个 AppointmentManager，添加、取消、查询只访问当天的分区
+// 早于 today - horizonDays 的分区写成 GZIP 压缩的段文件（yyyy-MM-dd.seg.gz）后从内存中移除，
+// 读取这些日期时再按需加载，最近读过的 cachedDays 天留在内存中；已归档的日期只能读，不能修改，
+// 返回的是与缓存分离的副本，对副本改名不会影响日历
+// 同一手机号每天只能有一个预约；与 AppointmentManager 一样不是线程安全的
+class AppointmentCalendar {
+    static final String SEGMENT_SUFFIX = ".seg.gz";
+
+    private static final int SEGMENT_MAGIC = 0x41505333;  // "APS3"
+    private static final int LEGACY_SEGMENT_MAGIC = 0x41505344;  // "APSD"，姓名不可为 null
+
+    private final Path directory;
+    private final IntFunction<HealthProfessional> professionals;
+    private final int horizonDays;
+    private final TreeMap<LocalDate, AppointmentManager> days = new TreeMap<>();
+    // 从段文件加载的已归档日期，按访问顺序淘汰
+    private final LinkedHashMap<LocalDate, AppointmentManager> archived;
+    private LocalDate today = LocalDate.now();
+    private boolean verbose = true;
+
+    public AppointmentCalendar(Path directory, IntFunction<HealthProfessional> professionals, int horizonDays,
+                               int cachedDays) throws IOException {
+        if (horizonDays < 0 || cachedDays < 0) {
+            throw new IllegalArgumentException("Invalid calendar horizon: " + horizonDays + ", " + cachedDays);
+        }
+        this.directory = directory;
+        this.professionals = professionals;
+        this.horizonDays = horizonDays;
+        this.archived = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<LocalDate, AppointmentManager> eldest) {
+                return size() > cachedDays;
+            }
+        };
+        Files.createDirectories(directory);
+    }
+
+    // 之后创建的分区是否向控制台打印结果
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    public LocalDate getToday() {
+        return today;
+    }
+
+    // 早于这一天的分区已归档
+    public LocalDate getCutoff() {
+        return today.minusDays(horizonDays);
+    }
+
+    // 日期前进到 today，并把超出范围的分区写到磁盘
+    public void advanceTo(LocalDate today) throws IOException {
+        if (today.isBefore(this.today)) {
+            throw new IllegalArgumentException("Calendar cannot move back to " + today);
+        }
+        this.today = today;
+        evict();
+    }
+
+    // 把早于 cutoff 的分区写成段文件并从内存中移除，没有预约的分区不写段文件，返回移除的天数
+    public int evict() throws IOException {
+        int evicted = 0;
+        Iterator<Map.Entry<LocalDate, AppointmentManager>> it = days.headMap(getCutoff()).entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<LocalDate, AppointmentManager> day = it.next();
+            if (day.getValue().size() > 0) {
+                writeSegment(day.getKey(), day.getValue());
+            } else {
+                // 从段文件恢复后又全部取消的日期，删除旧的段文件，否则取消的预约会重新出现
+                Files.deleteIfExists(segmentFile(day.getKey()));
+                archived.remove(day.getKey());
+            }
+            it.remove();
+            evicted++;
+        }
+        return evicted;
+    }
+
+    // 某一天的分区，用于添加和取消预约；没有时创建，已归档的日期抛出 IllegalArgumentException
+    public AppointmentManager day(LocalDate date) throws IOException {
+        AppointmentManager manager = days.get(date);
+        if (manager != null) {
+            return manager;
+        }
+        if (date.isBefore(getCutoff())) {
+            throw new IllegalArgumentException("Appointments on " + date + " are archived and read-only");
+        }
+        // 以前用较短的 horizon 归档过的日期从段文件恢复为可写的分区，段文件在下次归档时覆盖
+        manager = Files.exists(segmentFile(date)) ? readSegment(date) : new AppointmentManager();
+        manager.setVerbose(verbose);
+        days.put(date, manager);
+        return manager;
+    }
+
+    public boolean addAppointment(LocalDate date, Appointment appointment) throws IOException {
+        return day(date).addAppointment(appointment);
+    }
+
+    public boolean cancelAppointment(LocalDate date, String mobile) throws IOException {
+        return day(date).cancelAppointment(mobile);
+    }
+
+    public Appointment findAppointment(LocalDate date, String mobile) throws IOException {
+        AppointmentManager manager = read(date);
+        Appointment appointment = manager == null ? null : manager.findAppointment(mobile);
+        return appointment != null && isArchived(date) ? detached(appointment) : appointment;
+    }
+
+    // 某一天的所有预约，只读；已归档的日期从段文件加载
+    public Iterable<Appointment> getAppointments(LocalDate date) throws IOException {
+        AppointmentManager manager = read(date);
+        if (manager == null) {
+            return Collections.emptyList();
+        }
+        Iterable<Appointment> appointments = manager.getAppointments();
+        if (!isArchived(date)) {
+            return appointments;
+        }
+        return () -> new Iterator<Appointment>() {
+            private final Iterator<Appointment> it = appointments.iterator();
+
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public Appointment next() {
+                return detached(it.next());
+            }
+        };
+    }
+
+    // 内存中可写的分区数
+    public int getResidentDays() {
+        return days.size();
+    }
+
+    // 内存中缓存的已归档日期数
+    public int getCachedArchivedDays() {
+        return archived.size();
+    }
+
+    private AppointmentManager read(LocalDate date) throws IOException {
+        AppointmentManager manager = days.get(date);
+        if (manager != null) {
+            return manager;
+        }
+        if (!date.isBefore(getCutoff())) {
+            return Files.exists(segmentFile(date)) ? day(date) : null;
+        }
+        manager = archived.get(date);
+        if (manager == null && Files.exists(segmentFile(date))) {
+            manager = readSegment(date);
+            archived.put(date, manager);
+        }
+        return manager;
+    }
+
+    private boolean isArchived(LocalDate date) {
+        return date.isBefore(getCutoff());
+    }
+
+    // 已归档的预约的副本，没有改名监听器；改名写不回段文件，所以不能把缓存中的对象交给调用方
+    private static Appointment detached(Appointment appointment) {
+        return new Appointment(appointment.getPatientName(), appointment.getMobile(), appointment.getTimeSlot(),
+                appointment.getHealthProfessional());
+    }
+
+    private Path segmentFile(LocalDate date) {
+        return directory.resolve(date + SEGMENT_SUFFIX);
+    }
+
+    private void writeSegment(LocalDate date, AppointmentManager manager) throws IOException {
+        Path file = segmentFile(date);
+        Path tmp = directory.resolve(date + SEGMENT_SUFFIX + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            DataOutputStream data = new DataOutputStream(
+                    new BufferedOutputStream(new GZIPOutputStream(out, 1 << 16), 1 << 16));
+            data.writeInt(SEGMENT_MAGIC);
+            data.writeInt(manager.size());
+            for (Appointment appointment : manager.getAppointments()) {
+                AppointmentJournal.writeAppointment(data, appointment);
+            }
+            data.close();
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        archived.remove(date);
+    }
+
+    private AppointmentManager readSegment(LocalDate date) throws IOException {
+        Path file = segmentFile(date);
+        AppointmentManager manager = new AppointmentManager();
+        manager.setVerbose(false);
+        try (InputStream in = Files.newInputStream(file)) {
+            DataInputStream data = new DataInputStream(new BufferedInputStream(new GZIPInputStream(in, 1 << 16), 1 << 16));
+            int magic = data.readInt();
+            if (magic != SEGMENT_MAGIC && magic != LEGACY_SEGMENT_MAGIC) {
+                throw new IOException("Not an appointment segment: " + file);
+            }
+            int count = data.readInt();
+            for (int i = 0; i < count; i++) {
+                Appointment appointment =
+                        AppointmentJournal.readAppointment(data, professionals, magic == LEGACY_SEGMENT_MAGIC);
+                if (!manager.restore(appointment)) {
+                    throw new IOException("Conflicting appointments in segment: " + file);
+                }
+            }
+            // 读到流末尾时 GZIPInputStream 才会检查 CRC
+            if (data.read() != -1) {
+                throw new IOException("Trailing data in segment: " + file);
+            }
+        }
+        return manager;
+    }
+}
@@ -0,0 +1,168 @@
+package aaa;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.IntFunction;
+import java.util.stream.Stream;
+
+// 预约的 CSV 格式：patientName,mobile,timeSlot,professionalId
+// 字段中含有逗号、引号或换行时用双引号括起来，引号写成两个双引号；引号内的换行使一条记录跨越多行
+final class AppointmentCsv {
+    static final String HEADER = "patientName,mobile,timeSlot,professionalId";
+
+    private AppointmentCsv() {
+    }
+
+    // 把 CSV 行批量导入 manager：先解析所有行，全部解析成功后再调用 addAppointments 校验并写入
+    // 第一行等于 HEADER 时跳过；返回结果中的行号为记录序号，不包括表头
+    // lines 已经按行拆开，引号内的换行读回时一律为 \n
+    static BatchResult importBatch(AppointmentManager manager, Stream<String> lines,
+                                   IntFunction<HealthProfessional> professionals) {
+        ArrayList<Appointment> batch = new ArrayList<>();
+        BatchResult parseErrors = new BatchResult();
+        Iterator<String> it = lines.iterator();
+        int row = 0;
+        boolean first = true;
+        while (it.hasNext()) {
+            String line = it.next();
+            // 引号个数为奇数时字段还没有结束，接上后面的行
+            int quotes = countQuotes(line);
+            if (quotes % 2 != 0) {
+                StringBuilder record = new StringBuilder(line);
+                while (quotes % 2 != 0 && it.hasNext()) {
+                    String next = it.next();
+                    record.append('\n').append(next);
+                    quotes += countQuotes(next);
+                }
+                line = record.toString();
+            }
+            if (first && line.equals(HEADER)) {
+                first = false;
+                continue;
+            }
+            first = false;
+            if (line.isEmpty()) {
+                continue;
+            }
+            try {
+                batch.add(parseAppointment(line, professionals));
+            } catch (IllegalArgumentException e) {
+                parseErrors.addFailure(row, e.getMessage());
+            }
+            row++;
+        }
+        return parseErrors.isCommitted() ? manager.addAppointments(batch) : parseErrors;
+    }
+
+    static Appointment parseAppointment(CharSequence line, IntFunction<HealthProfessional> professionals) {
+        List<String> fields = parseLine(line);
+        if (fields.size() != 4) {
+            throw new IllegalArgumentException("Expected 4 fields but found " + fields.size());
+        }
+        return toAppointment(fields.get(0), fields.get(1), fields.get(2), fields.get(3), professionals);
+    }
+
+    // 由各字段创建预约，CSV 和 JSON 导入共用；医生 id 无效或不存在时抛出 IllegalArgumentException
+    static Appointment toAppointment(String patientName, String mobile, String timeSlot, String professionalId,
+                                     IntFunction<HealthProfessional> professionals) {
+        int id;
+        try {
+            id = Integer.parseInt(professionalId.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid health professional id: " + professionalId);
+        }
+        HealthProfessional professional = professionals.apply(id);
+        if (professional == null) {
+            throw new IllegalArgumentException("Unknown health professional id: " + id);
+        }
+        return new Appointment(patientName, mobile, timeSlot, professional);
+    }
+
+    // 拆分一行 CSV，支持双引号括起来的字段；不含引号的字段直接截取
+    static List<String> parseLine(CharSequence line) {
+        ArrayList<String> fields = new ArrayList<>(4);
+        StringBuilder field = null;
+        int length = line.length();
+        int i = 0;
+        while (true) {
+            int start = i;
+            while (i < length && line.charAt(i) != ',' && line.charAt(i) != '"') {
+                i++;
+            }
+            if (i < length && line.charAt(i) == '"') {
+                // 含引号的字段逐个字符处理
+                if (field == null) {
+                    field = new StringBuilder();
+                }
+                field.setLength(0);
+                field.append(line, start, i);
+                boolean quoted = false;
+                for (; i < length; i++) {
+                    char c = line.charAt(i);
+                    if (quoted) {
+                        if (c == '"' && i + 1 < length && line.charAt(i + 1) == '"') {
+                            field.append('"');
+                            i++;
+                        } else if (c == '"') {
+                            quoted = false;
+                        } else {
+                            field.append(c);
+                        }
+                    } else if (c == '"') {
+                        quoted = true;
+                    } else if (c == ',') {
+                        break;
+                    } else {
+                        field.append(c);
+                    }
+                }
+                if (quoted) {
+                    throw new IllegalArgumentException("Unterminated quoted field");
+                }
+                fields.add(field.toString());
+            } else {
+                fields.add(line.subSequence(start, i).toString());
+            }
+            if (i >= length) {
+                return fields;
+            }
+            i++;  // 跳过逗号
+        }
+    }
+
+    // 引号个数；转义的引号成对出现，不影响奇偶
+    static int countQuotes(String text) {
+        int quotes = 0;
+        for (int i = text.indexOf('"'); i >= 0; i = text.indexOf('"', i + 1)) {
+            quotes++;
+        }
+        return quotes;
+    }
+
+    // 写出一个字段，必要时加引号；null 写成空字段，读回时为 ""
+    static void appendField(Appendable out, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        boolean needsQuotes = false;
+        for (int i = 0; i < value.length() && !needsQuotes; i++) {
+            char c = value.charAt(i);
+            needsQuotes = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!needsQuotes) {
+            out.append(value);
+            return;
+        }
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                out.append('"');
+            }
+            out.append(c);
+        }
+        out.append('"');
+    }
+}
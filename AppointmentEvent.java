@@ -0,0 +1,61 @@
+package aaa;
+
+// AppointmentEventPublisher 发布的预约变化事件
+// patientName 是事件发生时的病人姓名，之后改名不会影响已经发布的事件
+final class AppointmentEvent {
+    enum Type { ADDED, CANCELED, RENAMED }
+
+    private final Type type;
+    private final long sequence;
+    private final Appointment appointment;
+    private final String patientName;
+    private final String oldName;
+
+    AppointmentEvent(Type type, long sequence, Appointment appointment, String oldName) {
+        this.type = type;
+        this.sequence = sequence;
+        this.appointment = appointment;
+        this.patientName = appointment.getPatientName();
+        this.oldName = oldName;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    // 发布顺序的序号，从 1 开始连续递增；订阅者可以据此发现因缓冲区满而丢弃的事件
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Appointment getAppointment() {
+        return appointment;
+    }
+
+    public String getPatientName() {
+        return patientName;
+    }
+
+    public String getMobile() {
+        return appointment.getMobile();
+    }
+
+    public String getTimeSlot() {
+        return appointment.getTimeSlot();
+    }
+
+    public HealthProfessional getHealthProfessional() {
+        return appointment.getHealthProfessional();
+    }
+
+    // 改名前的姓名，只有 RENAMED 事件有
+    public String getOldName() {
+        return oldName;
+    }
+
+    @Override
+    public String toString() {
+        return type + " #" + sequence + " " + patientName + " " + getMobile() + " " + getTimeSlot()
+                + " " + getHealthProfessional().getName();
+    }
+}
@@ -0,0 +1,87 @@
+package aaa;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// 把 AppointmentManager 的添加、取消、改名以 Flow 事件的形式发布给订阅者，例如短信通知和报表
+// 每个订阅者有自己的有界缓冲区，按订阅者 request 的数量投递，投递在 executor 中进行
+// 发布从不阻塞预约操作：某个订阅者的缓冲区满了，只丢弃发给它的这一条事件并计数，其他订阅者不受影响
+// 每个订阅者按发布顺序收到事件，因此同一医生的事件一定是有序的
+class AppointmentEventPublisher implements AppointmentListener, Flow.Publisher<AppointmentEvent>, AutoCloseable {
+    private final SubmissionPublisher<AppointmentEvent> publisher;
+    private final LongAdder dropped = new LongAdder();
+    // 监听器回调可能来自多个线程（例如 ConcurrentAppointmentManager），序号保证唯一且递增；
+    // 并发发布时，订阅者收到事件的顺序可能与序号略有不同
+    private final AtomicLong sequence = new AtomicLong();
+
+    // 使用公共 ForkJoinPool 投递，每个订阅者缓冲 bufferCapacity 个事件（会向上取整到 2 的幂）
+    public AppointmentEventPublisher(int bufferCapacity) {
+        this(ForkJoinPool.commonPool(), bufferCapacity);
+    }
+
+    public AppointmentEventPublisher(Executor executor, int bufferCapacity) {
+        publisher = new SubmissionPublisher<>(executor, bufferCapacity);
+    }
+
+    // 创建后立即开始发布 manager 的变化
+    public static AppointmentEventPublisher attach(AppointmentManager manager, int bufferCapacity) {
+        AppointmentEventPublisher events = new AppointmentEventPublisher(bufferCapacity);
+        manager.addListener(events);
+        return events;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super AppointmentEvent> subscriber) {
+        publisher.subscribe(subscriber);
+    }
+
+    @Override
+    public void appointmentAdded(Appointment appointment) {
+        publish(AppointmentEvent.Type.ADDED, appointment, null);
+    }
+
+    @Override
+    public void appointmentCanceled(Appointment appointment) {
+        publish(AppointmentEvent.Type.CANCELED, appointment, null);
+    }
+
+    @Override
+    public void patientRenamed(Appointment appointment, String oldName) {
+        publish(AppointmentEvent.Type.RENAMED, appointment, oldName);
+    }
+
+    // 因订阅者缓冲区满而丢弃的事件数（每个订阅者分别计算）
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    public int getSubscriberCount() {
+        return publisher.getNumberOfSubscribers();
+    }
+
+    // 所有订阅者中积压最多的事件数
+    public int getMaxBufferedEvents() {
+        return publisher.estimateMaximumLag();
+    }
+
+    // 已缓冲的事件投递完后通知订阅者 onComplete；之后的变化不再发布
+    @Override
+    public void close() {
+        publisher.close();
+    }
+
+    private void publish(AppointmentEvent.Type type, Appointment appointment, String oldName) {
+        if (publisher.isClosed() || !publisher.hasSubscribers()) {
+            return;
+        }
+        AppointmentEvent event = new AppointmentEvent(type, sequence.incrementAndGet(), appointment, oldName);
+        publisher.offer(event, (subscriber, item) -> {
+            dropped.increment();
+            return false;
+        });
+    }
+}
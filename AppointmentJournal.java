@@ -0,0 +1,436 @@
+package aaa;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+// 预约的持久化：把添加、取消、改名事件按顺序追加到日志文件，并定期写出压缩后的快照
+// 启动时先加载快照，再重放快照之后的日志
+// 姓名可以为 null，写成一个是否存在的标志再加上姓名；旧格式的快照和记录（姓名不可为 null）仍然可以读取
+// 写日志由后台线程完成，一次写入并 fsync 一批记录（组提交），预约操作本身不等待磁盘
+// 快照也由后台线程写出：预约线程只用 manager.snapshot() 取得 O(1) 的一致视图，
+// 所以 open 会开启 manager 的快照，并且日志监听器排在快照的版本记录之后
+class AppointmentJournal implements AppointmentListener, Closeable {
+    static final String JOURNAL_FILE = "journal.log";
+    static final String SNAPSHOT_FILE = "snapshot.dat";
+
+    private static final int SNAPSHOT_MAGIC = 0x41505332;  // "APS2"
+    private static final int LEGACY_SNAPSHOT_MAGIC = 0x41505053;  // "APPS"，姓名不可为 null
+    private static final byte LEGACY_ADD = 1;
+    private static final byte CANCEL = 2;
+    private static final byte LEGACY_RENAME = 3;
+    private static final byte ADD = 4;
+    private static final byte RENAME = 5;
+
+    private final Path directory;
+    private final AppointmentManager manager;
+    private final FileChannel channel;
+    private final int snapshotInterval;
+    private final Thread writer;
+
+    // 以下字段由 this 保护
+    private final ArrayList<ByteBuffer> pending = new ArrayList<>();
+    private long lastSequence;
+    private long durableSequence;
+    private int recordsSinceSnapshot;
+    // 等待后台线程写出的快照视图及其对应的日志序号
+    private AppointmentSnapshot snapshotView;
+    private long snapshotViewSequence;
+    private long snapshotSequence;
+    private IOException failure;
+    private boolean closed;
+
+    private AppointmentJournal(Path directory, AppointmentManager manager, long lastSequence, int snapshotInterval)
+            throws IOException {
+        this.directory = directory;
+        this.manager = manager;
+        this.lastSequence = lastSequence;
+        this.durableSequence = lastSequence;
+        this.snapshotInterval = snapshotInterval;
+        this.channel = FileChannel.open(directory.resolve(JOURNAL_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.writer = new Thread(this::writeLoop, "appointment-journal");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    // 从目录中恢复预约到 manager（manager 应为空），然后开始记录之后的变化
+    // snapshotInterval 为每追加多少条记录写一次快照，0 表示只在调用 snapshot() 时写
+    public static AppointmentJournal open(Path directory, AppointmentManager manager,
+                                          IntFunction<HealthProfessional> professionals, int snapshotInterval)
+            throws IOException {
+        Files.createDirectories(directory);
+        long sequence = loadSnapshot(directory.resolve(SNAPSHOT_FILE), manager, professionals);
+        sequence = replay(directory.resolve(JOURNAL_FILE), manager, professionals, sequence);
+        AppointmentJournal journal = new AppointmentJournal(directory, manager, sequence, snapshotInterval);
+        // 版本记录先于日志收到每个变化，日志记录序号时取得的视图已经包含这个变化
+        manager.enableSnapshots();
+        manager.addListener(journal);
+        return journal;
+    }
+
+    @Override
+    public void appointmentAdded(Appointment appointment) {
+        append(ADD, appointment.getPatientName(), appointment.getMobile(), appointment.getTimeSlot(),
+                appointment.getHealthProfessional().getId());
+    }
+
+    @Override
+    public void appointmentCanceled(Appointment appointment) {
+        append(CANCEL, null, appointment.getMobile(), null, 0);
+    }
+
+    @Override
+    public void patientRenamed(Appointment appointment, String oldName) {
+        append(RENAME, appointment.getPatientName(), appointment.getMobile(), null, 0);
+    }
+
+    // 等待目前为止的所有记录写入磁盘
+    public void flush() throws IOException {
+        synchronized (this) {
+            long target = lastSequence;
+            while (durableSequence < target && failure == null) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while flushing journal");
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    // 把当前所有预约写成快照，然后清空日志；等待后台线程写完
+    // 需要在操作 manager 的同一个线程中调用
+    public void snapshot() throws IOException {
+        long sequence = requestSnapshot();
+        synchronized (this) {
+            while (snapshotSequence < sequence && failure == null) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while writing snapshot");
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    // 记下当前的视图和日志序号，交给后台线程写出；还没有写出的旧视图被替换
+    private synchronized long requestSnapshot() {
+        if (snapshotView != null) {
+            snapshotView.close();
+        }
+        snapshotView = manager.snapshot();
+        snapshotViewSequence = lastSequence;
+        recordsSinceSnapshot = 0;
+        notifyAll();
+        return lastSequence;
+    }
+
+    // 在后台线程中写出快照，然后清空日志
+    private void writeSnapshot(AppointmentSnapshot view, long sequence) throws IOException {
+        Path tmp = directory.resolve(SNAPSHOT_FILE + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            CheckedOutputStream checked = new CheckedOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(out), 1 << 16), new CRC32());
+            DataOutputStream data = new DataOutputStream(checked);
+            data.writeInt(SNAPSHOT_MAGIC);
+            data.writeLong(sequence);
+            data.writeInt(view.size());
+            for (Appointment appointment : view) {
+                writeAppointment(data, appointment);
+            }
+            data.flush();
+            data.writeLong(checked.getChecksum().getValue());
+            data.flush();
+            out.force(true);
+        }
+        Files.move(tmp, directory.resolve(SNAPSHOT_FILE), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        // 日志文件中恰好是 sequence 为止的记录，都已包含在快照中
+        // 只有后台线程写日志文件，之后的记录还在 pending 中，会写在清空后的文件里
+        channel.truncate(0);
+        channel.force(true);
+        synchronized (this) {
+            snapshotSequence = sequence;
+            notifyAll();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        manager.removeListener(this);
+        try {
+            flush();
+        } finally {
+            synchronized (this) {
+                closed = true;
+                notifyAll();
+            }
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            // 写线程因出错退出时可能留下没有写出的快照视图
+            synchronized (this) {
+                if (snapshotView != null) {
+                    snapshotView.close();
+                    snapshotView = null;
+                }
+            }
+            channel.close();
+        }
+    }
+
+    private void append(byte type, String name, String mobile, String timeSlot, int professionalId) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream data = new DataOutputStream(bytes);
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("Journal is closed");
+            }
+            long sequence = lastSequence + 1;
+            try {
+                data.writeInt(0);  // 长度，稍后填入
+                data.writeByte(type);
+                data.writeLong(sequence);
+                data.writeUTF(mobile);
+                if (type != CANCEL) {
+                    writeName(data, name);
+                }
+                if (type == ADD) {
+                    data.writeUTF(timeSlot);
+                    data.writeInt(professionalId);
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);  // ByteArrayOutputStream 不会抛出 IOException
+            }
+            byte[] record = bytes.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(record, 4, record.length - 4);
+            ByteBuffer buffer = ByteBuffer.allocate(record.length + 4);
+            buffer.put(record).putInt((int) crc.getValue()).flip();
+            buffer.putInt(0, record.length - 4);
+            pending.add(buffer);
+            lastSequence = sequence;
+            notifyAll();
+            if (snapshotInterval > 0 && ++recordsSinceSnapshot >= snapshotInterval) {
+                requestSnapshot();
+            }
+        }
+    }
+
+    // 后台写线程：每次取出所有待写记录，一次写入并 fsync；有快照请求时接着写出快照
+    private void writeLoop() {
+        while (true) {
+            ByteBuffer[] batch;
+            long target;
+            AppointmentSnapshot view;
+            long viewSequence;
+            synchronized (this) {
+                while (pending.isEmpty() && snapshotView == null && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (pending.isEmpty() && snapshotView == null) {
+                    return;
+                }
+                view = snapshotView;
+                viewSequence = snapshotViewSequence;
+                snapshotView = null;
+                // 有快照时只写到快照的序号为止，写完快照后日志可以清空，其余记录留到下一批
+                int count = view == null ? pending.size() : (int) (viewSequence - durableSequence);
+                List<ByteBuffer> taken = pending.subList(0, count);
+                batch = taken.toArray(new ByteBuffer[0]);
+                taken.clear();
+                target = view == null ? lastSequence : viewSequence;
+            }
+            try {
+                long remaining = 0;
+                for (ByteBuffer buffer : batch) {
+                    remaining += buffer.remaining();
+                }
+                while (remaining > 0) {
+                    remaining -= channel.write(batch);
+                }
+                channel.force(false);
+                synchronized (this) {
+                    durableSequence = target;
+                    notifyAll();
+                }
+                if (view != null) {
+                    try {
+                        writeSnapshot(view, viewSequence);
+                    } finally {
+                        view.close();
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                // 写线程退出后 flush 和 snapshot 都会抛出这个异常，不会一直等待
+                synchronized (this) {
+                    failure = e instanceof IOException ? (IOException) e : new IOException("Journal writer failed", e);
+                    notifyAll();
+                }
+                return;
+            }
+        }
+    }
+
+    // 快照和 AppointmentCalendar 的段文件共用的预约编码
+    static void writeAppointment(DataOutput data, Appointment appointment) throws IOException {
+        data.writeUTF(appointment.getMobile());
+        writeName(data, appointment.getPatientName());
+        data.writeUTF(appointment.getTimeSlot());
+        data.writeInt(appointment.getHealthProfessional().getId());
+    }
+
+    // legacy 为 true 时读取姓名不可为 null 的旧格式
+    static Appointment readAppointment(DataInput data, IntFunction<HealthProfessional> professionals, boolean legacy)
+            throws IOException {
+        String mobile = data.readUTF();
+        String name = legacy ? data.readUTF() : readName(data);
+        String timeSlot = data.readUTF();
+        return new Appointment(name, mobile, timeSlot, professional(professionals, data.readInt()));
+    }
+
+    // 可以为 null 的姓名：先写是否存在，再写姓名；日志、快照、段文件和复制共用
+    static void writeName(DataOutput data, String name) throws IOException {
+        data.writeBoolean(name != null);
+        if (name != null) {
+            data.writeUTF(name);
+        }
+    }
+
+    static String readName(DataInput data) throws IOException {
+        return data.readBoolean() ? data.readUTF() : null;
+    }
+
+    private static HealthProfessional professional(IntFunction<HealthProfessional> professionals, int id)
+            throws IOException {
+        HealthProfessional professional = professionals.apply(id);
+        if (professional == null) {
+            throw new IOException("Unknown health professional id: " + id);
+        }
+        return professional;
+    }
+
+    // 返回快照对应的日志序号，没有快照时返回 0
+    private static long loadSnapshot(Path file, AppointmentManager manager,
+                                     IntFunction<HealthProfessional> professionals) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        try (InputStream in = Files.newInputStream(file)) {
+            CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(in, 1 << 16), new CRC32());
+            DataInputStream data = new DataInputStream(checked);
+            int magic = data.readInt();
+            if (magic != SNAPSHOT_MAGIC && magic != LEGACY_SNAPSHOT_MAGIC) {
+                throw new IOException("Not an appointment snapshot: " + file);
+            }
+            long sequence = data.readLong();
+            int count = data.readInt();
+            for (int i = 0; i < count; i++) {
+                manager.restore(readAppointment(data, professionals, magic == LEGACY_SNAPSHOT_MAGIC));
+            }
+            long expected = checked.getChecksum().getValue();
+            if (data.readLong() != expected) {
+                throw new IOException("Corrupt appointment snapshot: " + file);
+            }
+            return sequence;
+        }
+    }
+
+    // 重放日志中序号大于 sequence 的记录；遇到不完整或校验失败的尾部记录时截断文件
+    private static long replay(Path file, AppointmentManager manager, IntFunction<HealthProfessional> professionals,
+                               long sequence) throws IOException {
+        if (!Files.exists(file)) {
+            return sequence;
+        }
+        long valid = 0;
+        try (DataInputStream data = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            while (true) {
+                byte[] record;
+                int crc;
+                try {
+                    int length = data.readInt();
+                    if (length <= 0 || length > 1 << 20) {
+                        break;
+                    }
+                    record = new byte[length];
+                    data.readFully(record);
+                    crc = data.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                CRC32 expected = new CRC32();
+                expected.update(record);
+                if ((int) expected.getValue() != crc) {
+                    break;
+                }
+                valid += 4 + record.length + 4;
+                DataInputStream fields = new DataInputStream(new ByteArrayInputStream(record));
+                byte type = fields.readByte();
+                long recordSequence = fields.readLong();
+                if (recordSequence <= sequence) {
+                    continue;
+                }
+                sequence = recordSequence;
+                String mobile = fields.readUTF();
+                if (type == ADD || type == LEGACY_ADD) {
+                    String name = type == ADD ? readName(fields) : fields.readUTF();
+                    String timeSlot = fields.readUTF();
+                    HealthProfessional professional = professional(professionals, fields.readInt());
+                    manager.restore(new Appointment(name, mobile, timeSlot, professional));
+                } else if (type == CANCEL) {
+                    manager.discard(mobile);
+                } else if (type == RENAME || type == LEGACY_RENAME) {
+                    manager.restoreName(mobile, type == RENAME ? readName(fields) : fields.readUTF());
+                } else {
+                    throw new IOException("Unknown journal record type " + type + " in " + file);
+                }
+            }
+        }
+        if (valid < Files.size(file)) {
+            try (FileChannel out = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                out.truncate(valid);
+                out.force(true);
+            }
+        }
+        return sequence;
+    }
+}
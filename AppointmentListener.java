@@ -0,0 +1,13 @@
+package aaa;
+
+// 预约变化的监听器，AppointmentManager 在预约添加、取消以及病人改名之后调用
+interface AppointmentListener {
+    default void appointmentAdded(Appointment appointment) {
+    }
+
+    default void appointmentCanceled(Appointment appointment) {
+    }
+
+    default void patientRenamed(Appointment appointment, String oldName) {
+    }
+}
@@ -0,0 +1,134 @@
+package aaa;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+// AppointmentMetrics 的默认实现：LongAdder 计数，LatencyHistogram 记录耗时，
+// 并把预约数量和时间表索引大小作为读数一起通过 JMX 暴露
+class AppointmentManagerMetrics implements AppointmentMetrics, AppointmentMetricsMXBean {
+    private final AppointmentManager manager;
+    private final LatencyHistogram addLatency = new LatencyHistogram();
+    private final LatencyHistogram cancelLatency = new LatencyHistogram();
+    private final LongAdder addRejected = new LongAdder();
+    private final LongAdder cancelMisses = new LongAdder();
+
+    // 创建后立即开始统计 manager 的操作
+    public AppointmentManagerMetrics(AppointmentManager manager) {
+        this.manager = manager;
+        manager.setMetrics(this);
+    }
+
+    // 注册到平台 MBeanServer，例如 name 为 "aaa:type=AppointmentManager,name=main"
+    public ObjectName registerMBean(String name) throws JMException {
+        ObjectName objectName = new ObjectName(name);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        server.registerMBean(this, objectName);
+        return objectName;
+    }
+
+    @Override
+    public void recordAdd(long nanos, boolean booked) {
+        addLatency.record(nanos);
+        if (!booked) {
+            addRejected.increment();
+        }
+    }
+
+    @Override
+    public void recordCancel(long nanos, boolean found) {
+        cancelLatency.record(nanos);
+        if (!found) {
+            cancelMisses.increment();
+        }
+    }
+
+    public LatencyHistogram getAddLatency() {
+        return addLatency;
+    }
+
+    public LatencyHistogram getCancelLatency() {
+        return cancelLatency;
+    }
+
+    @Override
+    public long getAddCount() {
+        return addLatency.getCount();
+    }
+
+    @Override
+    public long getAddRejectedCount() {
+        return addRejected.sum();
+    }
+
+    @Override
+    public long getCancelCount() {
+        return cancelLatency.getCount();
+    }
+
+    @Override
+    public long getCancelMissCount() {
+        return cancelMisses.sum();
+    }
+
+    @Override
+    public double getAddMeanMicros() {
+        return addLatency.getMean() / 1000.0;
+    }
+
+    @Override
+    public double getAddP50Micros() {
+        return addLatency.getPercentile(50) / 1000.0;
+    }
+
+    @Override
+    public double getAddP99Micros() {
+        return addLatency.getPercentile(99) / 1000.0;
+    }
+
+    @Override
+    public double getAddMaxMicros() {
+        return addLatency.getMax() / 1000.0;
+    }
+
+    @Override
+    public double getCancelMeanMicros() {
+        return cancelLatency.getMean() / 1000.0;
+    }
+
+    @Override
+    public double getCancelP50Micros() {
+        return cancelLatency.getPercentile(50) / 1000.0;
+    }
+
+    @Override
+    public double getCancelP99Micros() {
+        return cancelLatency.getPercentile(99) / 1000.0;
+    }
+
+    @Override
+    public double getCancelMaxMicros() {
+        return cancelLatency.getMax() / 1000.0;
+    }
+
+    // AppointmentManager 不是线程安全的，从 JMX 线程读取时得到的是近似值
+    @Override
+    public int getAppointmentCount() {
+        return manager.size();
+    }
+
+    @Override
+    public int getScheduleCount() {
+        return manager.getScheduleCount();
+    }
+
+    @Override
+    public void reset() {
+        addLatency.reset();
+        cancelLatency.reset();
+        addRejected.reset();
+        cancelMisses.reset();
+    }
+}
@@ -0,0 +1,22 @@
+package aaa;
+
+// AppointmentManager 操作耗时的统计接口，可以替换为其他监控系统的实现
+// 每次 addAppointment / cancelAppointment 之后调用一次，实现必须是线程安全且足够轻量的
+interface AppointmentMetrics {
+    // 不做任何统计，AppointmentManager 在这种情况下连计时也会跳过
+    AppointmentMetrics NONE = new AppointmentMetrics() {
+        @Override
+        public void recordAdd(long nanos, boolean booked) {
+        }
+
+        @Override
+        public void recordCancel(long nanos, boolean found) {
+        }
+    };
+
+    // booked 为 false 表示手机号重复或时段冲突
+    void recordAdd(long nanos, boolean booked);
+
+    // found 为 false 表示没有找到该手机号的预约
+    void recordCancel(long nanos, boolean found);
+}
@@ -0,0 +1,35 @@
+package aaa;
+
+// 通过 JMX 暴露的预约统计，耗时单位为微秒
+// JMX 要求 MXBean 接口是 public 的
+public interface AppointmentMetricsMXBean {
+    long getAddCount();
+
+    long getAddRejectedCount();
+
+    long getCancelCount();
+
+    long getCancelMissCount();
+
+    double getAddMeanMicros();
+
+    double getAddP50Micros();
+
+    double getAddP99Micros();
+
+    double getAddMaxMicros();
+
+    double getCancelMeanMicros();
+
+    double getCancelP50Micros();
+
+    double getCancelP99Micros();
+
+    double getCancelMaxMicros();
+
+    int getAppointmentCount();
+
+    int getScheduleCount();
+
+    void reset();
+}
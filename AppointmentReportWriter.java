@@ -0,0 +1,179 @@
+package aaa;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+// 批量输出报表：文本先写入可复用的字符缓冲区，缓冲区满时编码到字节缓冲区，再整块写到通道
+// 这样输出大量预约时只需要很少的 write 调用，也不会为每一行拼接新的字符串
+class AppointmentReportWriter implements Appendable, Flushable, Closeable {
+    static final String NEWLINE = System.lineSeparator();
+
+    private static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+    // 单条输出使用的缓冲区，每个线程一个，重复使用
+    private static final ThreadLocal<StringBuilder> SCRATCH = ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+    // 能把自己写入 Appendable 的对象，例如 Appointment::appendDetails
+    interface Renderer {
+        void appendTo(Appendable out) throws IOException;
+    }
+
+    private final WritableByteChannel channel;
+    private final CharBuffer chars;
+    private final ByteBuffer bytes;
+    private final CharsetEncoder encoder;
+
+    // buffer 由调用方提供，整个写出过程中重复使用
+    public AppointmentReportWriter(WritableByteChannel channel, ByteBuffer buffer, Charset charset) {
+        if (buffer.capacity() < 16) {
+            throw new IllegalArgumentException("Buffer too small: " + buffer.capacity());
+        }
+        this.channel = channel;
+        this.bytes = buffer;
+        this.bytes.clear();
+        this.chars = CharBuffer.allocate(buffer.capacity());
+        this.encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    public AppointmentReportWriter(OutputStream out) {
+        this(out, Charset.defaultCharset());
+    }
+
+    public AppointmentReportWriter(OutputStream out, Charset charset) {
+        this(Channels.newChannel(out), ByteBuffer.allocate(DEFAULT_BUFFER_SIZE), charset);
+    }
+
+    // PrintStream 使用的字符集；PrintStream.charset() 从 JDK 18 开始才有，
+    // 更早的版本上与 System.out 一样取 sun.stdout.encoding，没有时为默认字符集
+    static Charset charsetOf(PrintStream out) {
+        try {
+            return (Charset) PrintStream.class.getMethod("charset").invoke(out);
+        } catch (ReflectiveOperationException e) {
+            String encoding = out == System.out ? System.getProperty("sun.stdout.encoding") : null;
+            return encoding != null && Charset.isSupported(encoding)
+                    ? Charset.forName(encoding) : Charset.defaultCharset();
+        }
+    }
+
+    // 用一次 System.out 调用输出单个对象，取代原来每行一次的 println
+    static void print(Renderer renderer) {
+        StringBuilder out = SCRATCH.get();
+        out.setLength(0);
+        try {
+            renderer.appendTo(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);  // StringBuilder 不会抛出 IOException
+        }
+        System.out.print(out);
+        if (out.capacity() > DEFAULT_BUFFER_SIZE) {
+            SCRATCH.remove();
+        }
+    }
+
+    // 把所有预约分块写到 System.out，编码与 System.out 相同
+    static void printAll(Iterable<Appointment> appointments) {
+        PrintStream out = System.out;
+        AppointmentReportWriter report = new AppointmentReportWriter(out, charsetOf(out));
+        try {
+            report.writeAll(appointments);
+            report.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void write(Appointment appointment) throws IOException {
+        appointment.appendDetails(this);
+    }
+
+    public void write(HealthProfessional professional) throws IOException {
+        professional.appendDetails(this);
+    }
+
+    public void writeAll(Iterable<Appointment> appointments) throws IOException {
+        for (Appointment appointment : appointments) {
+            appointment.appendDetails(this);
+        }
+    }
+
+    @Override
+    public AppointmentReportWriter append(CharSequence csq) throws IOException {
+        return append(csq, 0, csq.length());
+    }
+
+    @Override
+    public AppointmentReportWriter append(CharSequence csq, int start, int end) throws IOException {
+        while (start < end) {
+            if (!chars.hasRemaining()) {
+                encode(false);
+            }
+            int n = Math.min(end - start, chars.remaining());
+            if (csq instanceof String) {
+                chars.put((String) csq, start, start + n);
+            } else {
+                for (int i = start; i < start + n; i++) {
+                    chars.put(csq.charAt(i));
+                }
+            }
+            start += n;
+        }
+        return this;
+    }
+
+    @Override
+    public AppointmentReportWriter append(char c) throws IOException {
+        if (!chars.hasRemaining()) {
+            encode(false);
+        }
+        chars.put(c);
+        return this;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        encode(false);
+        drain();
+    }
+
+    @Override
+    public void close() throws IOException {
+        encode(true);
+        while (encoder.flush(bytes) == CoderResult.OVERFLOW) {
+            drain();
+        }
+        drain();
+        encoder.reset();
+        channel.close();
+    }
+
+    // 把字符缓冲区中的内容编码到字节缓冲区，字节缓冲区满时写出
+    private void encode(boolean endOfInput) throws IOException {
+        chars.flip();
+        while (encoder.encode(chars, bytes, endOfInput) == CoderResult.OVERFLOW) {
+            drain();
+        }
+        // 未编码的剩余字符（例如被截断的代理对）留到下一次
+        chars.compact();
+    }
+
+    private void drain() throws IOException {
+        bytes.flip();
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        bytes.clear();
+    }
+}
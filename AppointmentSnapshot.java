@@ -0,0 +1,77 @@
+package aaa;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+// AppointmentManager.snapshot() 返回的某一时刻的只读视图，之后的添加、取消和改名都不会反映到视图中
+// 可以在任何线程中遍历，不需要与写操作同步；用完后应调用 close()，旧版本才能被回收
+// 视图中姓名与当前不同（之后改过名）的预约以副本返回，其余返回原来的 Appointment 对象
+final class AppointmentSnapshot implements Iterable<Appointment>, AutoCloseable {
+    private final AppointmentVersions versions;
+    private final AppointmentVersions.State state;
+    private boolean closed;
+
+    AppointmentSnapshot(AppointmentVersions versions, AppointmentVersions.State state) {
+        this.versions = versions;
+        this.state = state;
+    }
+
+    public long getVersion() {
+        return state.version;
+    }
+
+    public int size() {
+        return state.size;
+    }
+
+    // 按预约顺序遍历
+    @Override
+    public Iterator<Appointment> iterator() {
+        long version = state.version;
+        return new Iterator<Appointment>() {
+            private int index = advance(0);
+
+            private int advance(int from) {
+                while (from < state.count) {
+                    AppointmentVersions.Record record = state.records[from];
+                    if (record.created <= version && record.deleted > version) {
+                        break;
+                    }
+                    from++;
+                }
+                return from;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return index < state.count;
+            }
+
+            @Override
+            public Appointment next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                AppointmentVersions.Record record = state.records[index];
+                index = advance(index + 1);
+                Appointment appointment = record.appointment;
+                String name = record.nameAt(version);
+                // 姓名可以为 null
+                if (Objects.equals(name, appointment.getPatientName())) {
+                    return appointment;
+                }
+                return new Appointment(name, appointment.getMobile(), appointment.getTimeSlot(),
+                        appointment.getHealthProfessional());
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            versions.release(state.version);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package aaa;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// 预约数量的汇总计数：按医生、按医生类别（getProfessionalType）和按开始时间所在的小时
+// 作为监听器挂到 AppointmentManager 或 ConcurrentAppointmentManager 上，每次添加和取消 O(1) 更新，查询不遍历预约
+// 计数使用 LongAdder，多个线程同时预约时不会争用同一个计数器
+// 已有预约的 AppointmentManager 用 attach 挂上，先按已有的预约初始化计数；
+// 直接 addListener 时只统计之后的变化，ConcurrentAppointmentManager 应在添加预约之前挂上
+class AppointmentStatistics implements AppointmentListener {
+    private static final int HOURS = 24;
+
+    private final LongAdder total = new LongAdder();
+    private final ConcurrentHashMap<Integer, LongAdder> byProfessional = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LongAdder> byType = new ConcurrentHashMap<>();
+    private final LongAdder[] byHour = new LongAdder[HOURS];
+
+    public AppointmentStatistics() {
+        for (int i = 0; i < HOURS; i++) {
+            byHour[i] = new LongAdder();
+        }
+    }
+
+    // 按 manager 中已有的预约初始化计数，再挂到 manager 上；与 manager 的其他操作在同一个线程中调用
+    public static AppointmentStatistics attach(AppointmentManager manager) {
+        AppointmentStatistics statistics = new AppointmentStatistics();
+        for (Appointment appointment : manager.getAppointments()) {
+            statistics.record(appointment, 1);
+        }
+        manager.addListener(statistics);
+        return statistics;
+    }
+
+    @Override
+    public void appointmentAdded(Appointment appointment) {
+        record(appointment, 1);
+    }
+
+    @Override
+    public void appointmentCanceled(Appointment appointment) {
+        record(appointment, -1);
+    }
+
+    private void record(Appointment appointment, int delta) {
+        HealthProfessional professional = appointment.getHealthProfessional();
+        total.add(delta);
+        byProfessional.computeIfAbsent(professional.getId(), id -> new LongAdder()).add(delta);
+        byType.computeIfAbsent(professional.getProfessionalType(), type -> new LongAdder()).add(delta);
+        byHour[appointment.getSlotMinute() / 60].add(delta);
+    }
+
+    public long getBookings() {
+        return total.sum();
+    }
+
+    public long getBookings(HealthProfessional professional) {
+        return getBookingsForProfessional(professional.getId());
+    }
+
+    public long getBookingsForProfessional(int professionalId) {
+        LongAdder count = byProfessional.get(professionalId);
+        return count == null ? 0 : count.sum();
+    }
+
+    // type 为 "General Practitioner" 或 "Specialist"
+    public long getBookingsForType(String type) {
+        LongAdder count = byType.get(type);
+        return count == null ? 0 : count.sum();
+    }
+
+    // 开始时间在 hour 点（0 到 23）内的预约数
+    public long getBookingsForHour(int hour) {
+        if (hour < 0 || hour >= HOURS) {
+            throw new IllegalArgumentException("Invalid hour: " + hour);
+        }
+        return byHour[hour].sum();
+    }
+
+    public long[] getBookingsPerHour() {
+        long[] counts = new long[HOURS];
+        for (int i = 0; i < HOURS; i++) {
+            counts[i] = byHour[i].sum();
+        }
+        return counts;
+    }
+
+    // 医生 id 到预约数，不包括当前没有预约的医生
+    public Map<Integer, Long> getBookingsPerProfessional() {
+        return snapshot(byProfessional);
+    }
+
+    public Map<String, Long> getBookingsPerType() {
+        return snapshot(byType);
+    }
+
+    private static <K> Map<K, Long> snapshot(ConcurrentHashMap<K, LongAdder> counts) {
+        TreeMap<K, Long> result = new TreeMap<>();
+        counts.forEach((key, count) -> {
+            long sum = count.sum();
+            if (sum != 0) {
+                result.put(key, sum);
+            }
+        });
+        return result;
+    }
+}
@@ -0,0 +1,105 @@
+package aaa;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// 预约的存储引擎：按手机号保存和查找预约，并按预约顺序遍历
+// 冲突检查由 AppointmentManager 负责，put 之前调用方已确认手机号不存在
+interface AppointmentStore extends Iterable<Appointment> {
+    boolean contains(String mobile);
+
+    Appointment get(String mobile);
+
+    void put(Appointment appointment);
+
+    // 检查预约能否保存在此存储中，不能时抛出 IllegalArgumentException
+    default void validate(Appointment appointment) {
+    }
+
+    Appointment remove(String mobile);
+
+    int size();
+
+    // 预先为 additional 个新预约分配空间，批量导入时避免多次扩容
+    void ensureCapacity(int additional);
+
+    // 预约被改名后调用，返回该预约是否仍在存储中
+    boolean updatePatientName(Appointment appointment);
+
+    // 存储交给调用方的预约对象在改名时通知 listener
+    void setRenameListener(AppointmentListener listener);
+
+    // 存储创建时就有预约（例如从文件打开）时，AppointmentManager 用它建立每个医生的时间表
+    default void loadSchedules(Map<Integer, ProfessionalSchedule> schedules) {
+        for (Appointment appointment : this) {
+            schedules.computeIfAbsent(appointment.getHealthProfessional().getId(), id -> new ProfessionalSchedule())
+                    .occupy(appointment.getSlotMinute());
+        }
+    }
+}
+
+// 默认的存储引擎：直接保存 Appointment 对象
+// LinkedHashMap 以手机号为键，保持插入顺序，删除时不会移动其他元素
+class HeapAppointmentStore implements AppointmentStore {
+    private LinkedHashMap<String, Appointment> appointments = new LinkedHashMap<>();
+    private AppointmentListener renameListener;
+
+    @Override
+    public boolean contains(String mobile) {
+        return appointments.containsKey(mobile);
+    }
+
+    @Override
+    public Appointment get(String mobile) {
+        return appointments.get(mobile);
+    }
+
+    @Override
+    public void put(Appointment appointment) {
+        appointments.put(appointment.getMobile(), appointment);
+        appointment.setListener(renameListener);
+    }
+
+    @Override
+    public Appointment remove(String mobile) {
+        Appointment appointment = appointments.remove(mobile);
+        if (appointment != null) {
+            appointment.setListener(null);
+        }
+        return appointment;
+    }
+
+    @Override
+    public int size() {
+        return appointments.size();
+    }
+
+    // LinkedHashMap 不能直接扩容，只在新增数量较多时按最终大小重建一次，代替多次翻倍扩容
+    @Override
+    public void ensureCapacity(int additional) {
+        if (additional <= appointments.size()) {
+            return;
+        }
+        LinkedHashMap<String, Appointment> resized =
+                new LinkedHashMap<>((int) ((appointments.size() + additional) / 0.75f) + 1);
+        resized.putAll(appointments);
+        appointments = resized;
+    }
+
+    @Override
+    public boolean updatePatientName(Appointment appointment) {
+        return appointments.get(appointment.getMobile()) == appointment;
+    }
+
+    @Override
+    public void setRenameListener(AppointmentListener listener) {
+        this.renameListener = listener;
+    }
+
+    @Override
+    public Iterator<Appointment> iterator() {
+        return Collections.unmodifiableCollection(appointments.values()).iterator();
+    }
+}
@@ -0,0 +1,291 @@
+package aaa;
+
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+// 预约和医生的流式导出与导入，格式为 CSV（与 AppointmentCsv 相同）或 JSON Lines（每行一个 JSON 对象）
+// 通过 NIO 通道和直接内存缓冲区读写，每次只处理一条记录，内存占用与记录数无关
+// 导入时每解析一条记录就交给 sink，例如 manager::addAppointment 或 registry::register；
+// 格式错误时抛出 IllegalArgumentException，消息中包含记录开始的行号，之前的记录已经交给 sink；
+// 一条 CSV 记录最多 MAX_RECORD_CHARS 个字符，引号没有闭合时不会把文件的其余部分都读入内存
+// CSV 不区分 null 和空字符串：null 的姓名或详情导出为空字段，导入后为 ""；JSON 保留 null
+// 不关闭通道
+final class AppointmentStreams {
+    static final String PROFESSIONAL_HEADER = "id,name,specialization,type,detail";
+    static final int MAX_RECORD_CHARS = 1 << 20;
+
+    // 按记录读取 CSV：引号内的换行属于字段内容，记录会跨越多行，换行按原样（"\n" 或 "\r\n"）保留在字段中
+    private static final class CsvRecordReader {
+        private final ChannelLineReader in;
+        private long startLine;
+
+        CsvRecordReader(ReadableByteChannel channel) {
+            in = new ChannelLineReader(channel);
+        }
+
+        // 下一条记录，没有更多内容时返回 null
+        String read() throws IOException {
+            String line = in.readLine();
+            startLine = in.getLineNumber();
+            // 引号个数为奇数时字段还没有结束
+            int quotes = line == null ? 0 : AppointmentCsv.countQuotes(line);
+            if (quotes % 2 == 0) {
+                return line;
+            }
+            StringBuilder record = new StringBuilder(line);
+            while (quotes % 2 != 0) {
+                String ending = in.getLineEnding();
+                if ((line = in.readLine()) == null) {
+                    break;
+                }
+                if (record.length() + ending.length() + line.length() > MAX_RECORD_CHARS) {
+                    throw new IllegalArgumentException("Quoted field not closed within " + MAX_RECORD_CHARS
+                            + " characters at line " + startLine);
+                }
+                record.append(ending).append(line);
+                quotes += AppointmentCsv.countQuotes(line);
+            }
+            return record.toString();
+        }
+
+        // 最后一次返回的记录开始的行号
+        long getStartLine() {
+            return startLine;
+        }
+    }
+
+    private AppointmentStreams() {
+    }
+
+    // 导出预约 CSV，第一行为 AppointmentCsv.HEADER；返回导出的记录数
+    public static long writeAppointmentsCsv(WritableByteChannel channel, Iterable<Appointment> appointments)
+            throws IOException {
+        ChannelTextWriter out = new ChannelTextWriter(channel);
+        out.append(AppointmentCsv.HEADER).append('\n');
+        long count = 0;
+        for (Appointment appointment : appointments) {
+            AppointmentCsv.appendField(out, appointment.getPatientName());
+            out.append(',');
+            AppointmentCsv.appendField(out, appointment.getMobile());
+            out.append(',').append(appointment.getTimeSlot())
+                    .append(',').append(Integer.toString(appointment.getHealthProfessional().getId()))
+                    .append('\n');
+            count++;
+        }
+        out.flush();
+        return count;
+    }
+
+    // 导出预约 JSON Lines，字段与 BookingServer 返回的预约相同；返回导出的记录数
+    public static long writeAppointmentsJson(WritableByteChannel channel, Iterable<Appointment> appointments)
+            throws IOException {
+        ChannelTextWriter out = new ChannelTextWriter(channel);
+        long count = 0;
+        for (Appointment appointment : appointments) {
+            HealthProfessional professional = appointment.getHealthProfessional();
+            out.append("{\"patientName\":");
+            Json.quote(out, appointment.getPatientName());
+            out.append(",\"mobile\":");
+            Json.quote(out, appointment.getMobile());
+            out.append(",\"timeSlot\":\"").append(appointment.getTimeSlot())
+                    .append("\",\"professionalId\":").append(Integer.toString(professional.getId()))
+                    .append(",\"professionalName\":");
+            Json.quote(out, professional.getName());
+            out.append("}\n");
+            count++;
+        }
+        out.flush();
+        return count;
+    }
+
+    // 导出医生 CSV，第一行为 PROFESSIONAL_HEADER；type 为 getProfessionalType，
+    // detail 为全科医生的类型或专科医生的专科；返回导出的记录数
+    public static long writeProfessionalsCsv(WritableByteChannel channel,
+                                             Iterable<? extends HealthProfessional> professionals) throws IOException {
+        ChannelTextWriter out = new ChannelTextWriter(channel);
+        out.append(PROFESSIONAL_HEADER).append('\n');
+        long count = 0;
+        for (HealthProfessional professional : professionals) {
+            out.append(Integer.toString(professional.getId())).append(',');
+            AppointmentCsv.appendField(out, professional.getName());
+            out.append(',');
+            AppointmentCsv.appendField(out, professional.getSpecialization());
+            out.append(',');
+            AppointmentCsv.appendField(out, professional.getProfessionalType());
+            out.append(',');
+            AppointmentCsv.appendField(out, detailOf(professional));
+            out.append('\n');
+            count++;
+        }
+        out.flush();
+        return count;
+    }
+
+    // 导出医生 JSON Lines，字段与 PROFESSIONAL_HEADER 相同；返回导出的记录数
+    public static long writeProfessionalsJson(WritableByteChannel channel,
+                                              Iterable<? extends HealthProfessional> professionals) throws IOException {
+        ChannelTextWriter out = new ChannelTextWriter(channel);
+        long count = 0;
+        for (HealthProfessional professional : professionals) {
+            out.append("{\"id\":").append(Integer.toString(professional.getId())).append(",\"name\":");
+            Json.quote(out, professional.getName());
+            out.append(",\"specialization\":");
+            Json.quote(out, professional.getSpecialization());
+            out.append(",\"type\":");
+            Json.quote(out, professional.getProfessionalType());
+            out.append(",\"detail\":");
+            Json.quote(out, detailOf(professional));
+            out.append("}\n");
+            count++;
+        }
+        out.flush();
+        return count;
+    }
+
+    // 导入预约 CSV，第一行等于 AppointmentCsv.HEADER 时跳过，空行跳过；返回交给 sink 的记录数
+    public static long readAppointmentsCsv(ReadableByteChannel channel, IntFunction<HealthProfessional> professionals,
+                                           Consumer<? super Appointment> sink) throws IOException {
+        CsvRecordReader in = new CsvRecordReader(channel);
+        String record;
+        long count = 0;
+        while ((record = in.read()) != null) {
+            if (record.isEmpty() || in.getStartLine() == 1 && record.equals(AppointmentCsv.HEADER)) {
+                continue;
+            }
+            Appointment appointment;
+            try {
+                appointment = AppointmentCsv.parseAppointment(record, professionals);
+            } catch (IllegalArgumentException e) {
+                throw error(in.getStartLine(), e);
+            }
+            sink.accept(appointment);
+            count++;
+        }
+        return count;
+    }
+
+    // 导入预约 JSON Lines，空行跳过；professionalName 等其他字段忽略；返回交给 sink 的记录数
+    public static long readAppointmentsJson(ReadableByteChannel channel, IntFunction<HealthProfessional> professionals,
+                                            Consumer<? super Appointment> sink) throws IOException {
+        ChannelLineReader in = new ChannelLineReader(channel);
+        String line;
+        long count = 0;
+        while ((line = in.readLine()) != null) {
+            if (line.isBlank()) {
+                continue;
+            }
+            Appointment appointment;
+            try {
+                Map<String, String> fields = Json.parseObject(line);
+                appointment = AppointmentCsv.toAppointment(required(fields, "patientName"),
+                        required(fields, "mobile"), required(fields, "timeSlot"),
+                        required(fields, "professionalId"), professionals);
+            } catch (IllegalArgumentException e) {
+                throw error(in.getLineNumber(), e);
+            }
+            sink.accept(appointment);
+            count++;
+        }
+        return count;
+    }
+
+    // 导入医生 CSV，第一行等于 PROFESSIONAL_HEADER 时跳过，空行跳过；返回交给 sink 的记录数
+    public static long readProfessionalsCsv(ReadableByteChannel channel, Consumer<? super HealthProfessional> sink)
+            throws IOException {
+        CsvRecordReader in = new CsvRecordReader(channel);
+        String record;
+        long count = 0;
+        while ((record = in.read()) != null) {
+            if (record.isEmpty() || in.getStartLine() == 1 && record.equals(PROFESSIONAL_HEADER)) {
+                continue;
+            }
+            HealthProfessional professional;
+            try {
+                List<String> fields = AppointmentCsv.parseLine(record);
+                if (fields.size() != 5) {
+                    throw new IllegalArgumentException("Expected 5 fields but found " + fields.size());
+                }
+                professional = toProfessional(fields.get(0), fields.get(1), fields.get(2), fields.get(3),
+                        fields.get(4));
+            } catch (IllegalArgumentException e) {
+                throw error(in.getStartLine(), e);
+            }
+            sink.accept(professional);
+            count++;
+        }
+        return count;
+    }
+
+    // 导入医生 JSON Lines，空行跳过；返回交给 sink 的记录数
+    public static long readProfessionalsJson(ReadableByteChannel channel, Consumer<? super HealthProfessional> sink)
+            throws IOException {
+        ChannelLineReader in = new ChannelLineReader(channel);
+        String line;
+        long count = 0;
+        while ((line = in.readLine()) != null) {
+            if (line.isBlank()) {
+                continue;
+            }
+            HealthProfessional professional;
+            try {
+                Map<String, String> fields = Json.parseObject(line);
+                professional = toProfessional(required(fields, "id"), required(fields, "name"),
+                        required(fields, "specialization"), required(fields, "type"), fields.get("detail"));
+            } catch (IllegalArgumentException e) {
+                throw error(in.getLineNumber(), e);
+            }
+            sink.accept(professional);
+            count++;
+        }
+        return count;
+    }
+
+    private static String required(Map<String, String> fields, String name) {
+        String value = fields.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing field: " + name);
+        }
+        return value;
+    }
+
+    private static IllegalArgumentException error(long line, IllegalArgumentException e) {
+        return new IllegalArgumentException(e.getMessage() + " at line " + line, e);
+    }
+
+    // 全科医生的类型或专科医生的专科，其他医生为 null
+    private static String detailOf(HealthProfessional professional) {
+        if (professional instanceof GeneralPractitioner) {
+            return ((GeneralPractitioner) professional).getGpType();
+        }
+        if (professional instanceof Specialist) {
+            return ((Specialist) professional).getSpecialty();
+        }
+        return null;
+    }
+
+    // 按 getProfessionalType 的值创建对应的医生
+    private static HealthProfessional toProfessional(String idText, String name, String specialization, String type,
+                                                     String detail) {
+        int id;
+        try {
+            id = Integer.parseInt(idText.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid health professional id: " + idText);
+        }
+        switch (type) {
+            case "General Practitioner":
+                return new GeneralPractitioner(id, name, specialization, detail);
+            case "Specialist":
+                return new Specialist(id, name, specialization, detail);
+            case "Health Professional":
+                return new HealthProfessional(id, name, specialization);
+            default:
+                throw new IllegalArgumentException("Unknown health professional type: " + type);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package aaa;
+
+import java.util.HashMap;
+import java.util.TreeMap;
+
+// AppointmentManager 的多版本记录，用于 snapshot()
+// 每个预约一条记录，带有创建和删除时的版本号，改名时在记录上追加一个带版本号的姓名
+// 记录数组只追加，已发布的部分不再修改；快照只需要记下当前的数组、长度和版本号，O(1)
+// 写操作只在 AppointmentManager 的线程中进行，快照可以在任何线程中获取和遍历
+// 已删除的记录和旧的姓名在没有快照需要它们之后，由压缩时丢弃
+final class AppointmentVersions implements AppointmentListener {
+    private static final int MIN_COMPACT = 1024;
+
+    static final class Record {
+        final Appointment appointment;
+        final long created;
+        volatile long deleted = Long.MAX_VALUE;
+        volatile Name names;
+
+        Record(Appointment appointment, long created) {
+            this.appointment = appointment;
+            this.created = created;
+            this.names = new Name(appointment.getPatientName(), created, null);
+        }
+
+        // 版本 version 时的姓名
+        String nameAt(long version) {
+            Name name = names;
+            while (name.since > version) {
+                name = name.older;
+            }
+            return name.value;
+        }
+    }
+
+    static final class Name {
+        final String value;
+        final long since;
+        volatile Name older;
+
+        Name(String value, long since, Name older) {
+            this.value = value;
+            this.since = since;
+            this.older = older;
+        }
+    }
+
+    // 一次发布的不可变状态
+    static final class State {
+        final Record[] records;
+        final int count;
+        final long version;
+        final int size;
+
+        State(Record[] records, int count, long version, int size) {
+            this.records = records;
+            this.count = count;
+            this.version = version;
+            this.size = size;
+        }
+    }
+
+    // 以手机号为键：列式、映射文件和堆外存储每次返回新的 Appointment 视图，不能按对象查找
+    private final HashMap<String, Record> live = new HashMap<>();
+    // 正在使用的快照的版本号及其数量，由自身保护
+    private final TreeMap<Long, Integer> readers = new TreeMap<>();
+    private volatile State state;
+    private Record[] records = new Record[16];
+    private int count;
+    private long version;
+    // 仍保留的已删除记录和被替换的姓名数量，达到 compactAt 时压缩
+    private int garbage;
+    private int compactAt = MIN_COMPACT;
+
+    // 从 appointments 中现有的预约开始记录
+    AppointmentVersions(Iterable<Appointment> appointments) {
+        for (Appointment appointment : appointments) {
+            append(appointment);
+        }
+        publish();
+    }
+
+    AppointmentSnapshot snapshot() {
+        synchronized (readers) {
+            State current = state;
+            readers.merge(current.version, 1, Integer::sum);
+            return new AppointmentSnapshot(this, current);
+        }
+    }
+
+    void release(long version) {
+        synchronized (readers) {
+            readers.computeIfPresent(version, (v, n) -> n == 1 ? null : n - 1);
+        }
+    }
+
+    @Override
+    public void appointmentAdded(Appointment appointment) {
+        version++;
+        append(appointment);
+        publish();
+    }
+
+    @Override
+    public void appointmentCanceled(Appointment appointment) {
+        Record record = live.remove(appointment.getMobile());
+        if (record == null) {
+            return;
+        }
+        record.deleted = ++version;
+        garbage++;
+        maybeCompact();
+        publish();
+    }
+
+    @Override
+    public void patientRenamed(Appointment appointment, String oldName) {
+        Record record = live.get(appointment.getMobile());
+        if (record == null) {
+            return;
+        }
+        record.names = new Name(appointment.getPatientName(), ++version, record.names);
+        garbage++;
+        maybeCompact();
+        publish();
+    }
+
+    private void append(Appointment appointment) {
+        if (count == records.length) {
+            // 旧数组仍可能被快照引用，总是复制到新数组
+            Record[] grown = new Record[count * 2];
+            System.arraycopy(records, 0, grown, 0, count);
+            records = grown;
+        }
+        Record record = new Record(appointment, version);
+        records[count++] = record;
+        live.put(appointment.getMobile(), record);
+    }
+
+    private void publish() {
+        state = new State(records, count, version, live.size());
+    }
+
+    private void maybeCompact() {
+        if (garbage < compactAt || garbage < live.size()) {
+            return;
+        }
+        long oldest;
+        synchronized (readers) {
+            // 没有快照时用已发布的版本号：version 还没有发布，这时新建的快照仍使用 state.version
+            oldest = readers.isEmpty() ? state.version : readers.firstKey();
+        }
+        // 之后新建的快照版本号都不小于 oldest，不会再需要 oldest 之前删除的记录和被替换的姓名
+        Record[] compacted = new Record[Math.max(16, Integer.highestOneBit(live.size() * 2 + 1))];
+        int kept = 0;
+        garbage = 0;
+        for (int i = 0; i < count; i++) {
+            Record record = records[i];
+            if (record.deleted <= oldest) {
+                continue;
+            }
+            if (record.deleted != Long.MAX_VALUE) {
+                garbage++;
+            }
+            Name name = record.names;
+            while (name.since > oldest && name.older != null) {
+                garbage++;
+                name = name.older;
+            }
+            name.older = null;
+            if (kept == compacted.length) {
+                Record[] grown = new Record[kept * 2];
+                System.arraycopy(compacted, 0, grown, 0, kept);
+                compacted = grown;
+            }
+            compacted[kept++] = record;
+        }
+        records = compacted;
+        count = kept;
+        // 长时间不关闭的快照会让垃圾留下来，这时等垃圾翻倍再压缩，避免每次写操作都压缩
+        compactAt = Math.max(MIN_COMPACT, garbage * 2);
+    }
+}
@@ -0,0 +1,35 @@
+package aaa;
+
+import java.util.Comparator;
+
+// 某个医生的一个可预约时段，由 AppointmentManager.findEarliestSlots 返回
+class AvailableSlot {
+    static final Comparator<AvailableSlot> EARLIEST_FIRST = Comparator
+            .comparingInt(AvailableSlot::getSlotMinute)
+            .thenComparingInt(slot -> slot.getHealthProfessional().getId());
+
+    private final HealthProfessional healthProfessional;
+    private final int slotMinute;
+
+    AvailableSlot(HealthProfessional healthProfessional, int slotMinute) {
+        this.healthProfessional = healthProfessional;
+        this.slotMinute = slotMinute;
+    }
+
+    public HealthProfessional getHealthProfessional() {
+        return healthProfessional;
+    }
+
+    public int getSlotMinute() {
+        return slotMinute;
+    }
+
+    public String getTimeSlot() {
+        return Appointment.formatTimeSlot(slotMinute);
+    }
+
+    @Override
+    public String toString() {
+        return getTimeSlot() + " " + healthProfessional.getName();
+    }
+}
@@ -0,0 +1,56 @@
+package aaa;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// 批量添加预约的结果：全部成功时写入的预约数，或者每一行的失败原因
+class BatchResult {
+    // 一行数据的失败原因，row 为该行在批量数据中的下标（从 0 开始）
+    static final class Failure {
+        private final int row;
+        private final String reason;
+
+        Failure(int row, String reason) {
+            this.row = row;
+            this.reason = reason;
+        }
+
+        public int getRow() {
+            return row;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+
+        @Override
+        public String toString() {
+            return "row " + row + ": " + reason;
+        }
+    }
+
+    private final ArrayList<Failure> failures = new ArrayList<>();
+    private int bookedCount;
+
+    // 没有失败的行时整批数据已写入
+    public boolean isCommitted() {
+        return failures.isEmpty();
+    }
+
+    public int getBookedCount() {
+        return bookedCount;
+    }
+
+    public List<Failure> getFailures() {
+        return Collections.unmodifiableList(failures);
+    }
+
+    void addFailure(int row, String reason) {
+        failures.add(new Failure(row, reason));
+    }
+
+    void setBookedCount(int bookedCount) {
+        this.bookedCount = bookedCount;
+    }
+}
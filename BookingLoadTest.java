@@ -0,0 +1,95 @@
+package aaa;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+// BookingServer 的压力测试客户端：保持 concurrency 个请求同时进行，先预约再取消，
+// 最后输出吞吐量和延迟分布
+// 用法：java aaa.BookingLoadTest [地址] [请求数] [并发数] [医生数]
+// 不指定地址时在本进程内启动一个服务器
+public class BookingLoadTest {
+    private static final int SLOTS_PER_DAY = 24 * 60 / Appointment.SLOT_MINUTES;
+
+    public static void main(String[] args) throws Exception {
+        String address = args.length > 0 && !args[0].isEmpty() ? args[0] : null;
+        int requests = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        int concurrency = args.length > 2 ? Integer.parseInt(args[2]) : 256;
+        int professionals = args.length > 3 ? Integer.parseInt(args[3]) : 1000;
+
+        BookingServer server = null;
+        if (address == null) {
+            AppointmentManager manager = new AppointmentManager();
+            manager.setVerbose(false);
+            server = new BookingServer(manager, BookingServer.sampleRoster(professionals), 0);
+            server.start();
+            address = "http://localhost:" + server.getPort();
+        }
+
+        String base = address;
+        // HttpClient 不会关闭外部传入的线程池，结束时自己关闭，否则平台线程池会让 JVM 无法退出
+        ExecutorService executor = BookingServer.newRequestExecutor();
+        HttpClient client = HttpClient.newBuilder().executor(executor).build();
+        try {
+            System.out.println("phase,requests,concurrency,seconds,requests_per_sec,p50_ms,p99_ms,max_ms,errors");
+            // 每个预约使用不同的手机号；时段按医生轮流分配，预约数不超过医生数 * 每天时段数时不会冲突
+            run("add", client, requests, concurrency, i -> {
+                int professionalId = i % professionals + 1;
+                String slot = Appointment.formatTimeSlot(i / professionals % SLOTS_PER_DAY * Appointment.SLOT_MINUTES);
+                String body = "{\"patientName\":\"Patient " + i + "\",\"mobile\":\"" + mobile(i)
+                        + "\",\"timeSlot\":\"" + slot + "\",\"professionalId\":" + professionalId + "}";
+                return HttpRequest.newBuilder(URI.create(base + "/appointments"))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString(body)).build();
+            });
+            run("search", client, requests, concurrency, i -> HttpRequest.newBuilder(
+                    URI.create(base + "/slots?specialization=Cardiology&from=09:00&to=17:00&limit=5")).build());
+            run("cancel", client, requests, concurrency, i -> HttpRequest.newBuilder(
+                    URI.create(base + "/appointments/" + mobile(i))).DELETE().build());
+        } finally {
+            executor.shutdown();
+            if (server != null) {
+                server.stop();
+            }
+        }
+    }
+
+    private interface RequestFactory {
+        HttpRequest create(int i);
+    }
+
+    private static void run(String phase, HttpClient client, int requests, int concurrency, RequestFactory factory)
+            throws InterruptedException {
+        LatencyHistogram latency = new LatencyHistogram();
+        AtomicLong errors = new AtomicLong();
+        Semaphore inFlight = new Semaphore(concurrency);
+        long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            inFlight.acquire();
+            long sent = System.nanoTime();
+            CompletableFuture<HttpResponse<String>> response =
+                    client.sendAsync(factory.create(i), HttpResponse.BodyHandlers.ofString());
+            response.whenComplete((r, e) -> {
+                latency.record(System.nanoTime() - sent);
+                if (e != null || r.statusCode() >= 400) {
+                    errors.incrementAndGet();
+                }
+                inFlight.release();
+            });
+        }
+        inFlight.acquire(concurrency);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%s,%d,%d,%.2f,%.0f,%.2f,%.2f,%.2f,%d%n", phase, requests, concurrency, seconds,
+                requests / seconds, latency.getPercentile(50) / 1e6, latency.getPercentile(99) / 1e6,
+                latency.getMax() / 1e6, errors.get());
+    }
+
+    private static String mobile(int i) {
+        return String.valueOf(4_000_000_000L + i);
+    }
+}
@@ -0,0 +1,273 @@
+package aaa;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// 基于 JDK 自带 HttpServer 的预约服务，请求和响应都是 JSON
+//   POST   /appointments            {"patientName":..,"mobile":..,"timeSlot":"HH:mm","professionalId":..}
+//   GET    /appointments            列出所有预约
+//   GET    /appointments/{mobile}   查询一个预约
+//   DELETE /appointments/{mobile}   取消预约
+//   GET    /slots?specialization=Cardiology&from=09:00&to=17:00&limit=5
+// 每个请求在单独的虚拟线程中处理（JDK 21 及以上）；更早的 JDK 没有虚拟线程，改用不限数量的线程池
+// AppointmentManager 不是线程安全的，所有操作在 manager 上加锁，单个操作只需要几微秒
+// 列出所有预约时使用快照，不持有锁，生成响应期间预约照常进行
+class BookingServer {
+    private static final int BACKLOG = 16384;
+
+    private final AppointmentManager manager;
+    private final ProfessionalRegistry registry;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    // registry 在服务器启动后不能再修改
+    public BookingServer(AppointmentManager manager, ProfessionalRegistry registry, int port) throws IOException {
+        this.manager = manager;
+        this.registry = registry;
+        synchronized (manager) {
+            manager.enableSnapshots();
+        }
+        this.executor = newRequestExecutor();
+        this.server = HttpServer.create(new InetSocketAddress(port), BACKLOG);
+        server.createContext("/appointments", this::handleAppointments);
+        server.createContext("/slots", this::handleSlots);
+        server.setExecutor(executor);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        int professionals = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        ProfessionalRegistry registry = sampleRoster(professionals);
+        AppointmentManager manager = new AppointmentManager();
+        manager.setVerbose(false);
+        BookingServer server = new BookingServer(manager, registry, port);
+        server.start();
+        System.out.println("Booking server listening on port " + server.getPort() + " with "
+                + registry.size() + " health professionals");
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // 有虚拟线程时每个请求一个虚拟线程，否则使用按需创建的线程池
+    static ExecutorService newRequestExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    // 示例名册：一半全科医生，一半专科医生
+    static ProfessionalRegistry sampleRoster(int count) {
+        String[] specializations = {"Cardiology", "Dermatology", "Neurology", "Pediatrics"};
+        String[] specialties = {"Cardiologist", "Dermatologist", "Neurologist", "Pediatrician"};
+        ProfessionalRegistry registry = new ProfessionalRegistry();
+        for (int id = 1; id <= count; id++) {
+            if (id % 2 == 1) {
+                registry.generalPractitioner(id, "Dr. GP" + id, "General Medicine", "Primary Care");
+            } else {
+                int k = id / 2 % specializations.length;
+                registry.specialist(id, "Dr. SP" + id, specializations[k], specialties[k]);
+            }
+        }
+        return registry;
+    }
+
+    private void handleAppointments(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            String mobile = path.length() > "/appointments/".length() ? path.substring("/appointments/".length()) : null;
+            String method = exchange.getRequestMethod();
+            if (mobile == null && method.equals("POST")) {
+                add(exchange);
+            } else if (mobile == null && method.equals("GET")) {
+                list(exchange);
+            } else if (mobile != null && method.equals("GET")) {
+                find(exchange, mobile);
+            } else if (mobile != null && method.equals("DELETE")) {
+                cancel(exchange, mobile);
+            } else {
+                send(exchange, 405, error("Method not allowed"));
+            }
+        } catch (IllegalArgumentException e) {
+            send(exchange, 400, error(e.getMessage()));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void add(HttpExchange exchange) throws IOException {
+        Map<String, String> body = Json.parseObject(readBody(exchange));
+        String professionalId = required(body, "professionalId");
+        HealthProfessional professional = registry.get(Integer.parseInt(professionalId));
+        if (professional == null) {
+            throw new IllegalArgumentException("Unknown health professional id: " + professionalId);
+        }
+        Appointment appointment = new Appointment(required(body, "patientName"), required(body, "mobile"),
+                required(body, "timeSlot"), professional);
+        String failure;
+        synchronized (manager) {
+            failure = manager.bookAppointment(appointment);
+        }
+        if (failure != null) {
+            send(exchange, 409, error(failure));
+        } else {
+            send(exchange, 201, appointmentJson(new StringBuilder(), appointment).toString());
+        }
+    }
+
+    private void list(HttpExchange exchange) throws IOException {
+        StringBuilder out = new StringBuilder("[");
+        try (AppointmentSnapshot snapshot = manager.snapshot()) {
+            for (Appointment appointment : snapshot) {
+                if (out.length() > 1) {
+                    out.append(',');
+                }
+                appointmentJson(out, appointment);
+            }
+        }
+        send(exchange, 200, out.append(']').toString());
+    }
+
+    private void find(HttpExchange exchange, String mobile) throws IOException {
+        StringBuilder out = new StringBuilder();
+        synchronized (manager) {
+            Appointment appointment = manager.findAppointment(mobile);
+            if (appointment != null) {
+                appointmentJson(out, appointment);
+            }
+        }
+        if (out.length() == 0) {
+            send(exchange, 404, error("No appointment found for mobile: " + mobile));
+        } else {
+            send(exchange, 200, out.toString());
+        }
+    }
+
+    private void cancel(HttpExchange exchange, String mobile) throws IOException {
+        boolean canceled;
+        synchronized (manager) {
+            canceled = manager.cancelAppointment(mobile);
+        }
+        if (canceled) {
+            send(exchange, 200, "{\"canceled\":" + Json.quote(mobile) + "}");
+        } else {
+            send(exchange, 404, error("No appointment found for mobile: " + mobile));
+        }
+    }
+
+    private void handleSlots(HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                send(exchange, 405, error("Method not allowed"));
+                return;
+            }
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            List<HealthProfessional> candidates = registry.findProfessionals(required(query, "specialization"));
+            String from = query.getOrDefault("from", "00:00");
+            String to = query.getOrDefault("to", "23:59");
+            int limit = Integer.parseInt(query.getOrDefault("limit", "10"));
+            List<AvailableSlot> slots;
+            synchronized (manager) {
+                slots = manager.findEarliestSlots(candidates, from, to, limit);
+            }
+            StringBuilder out = new StringBuilder("[");
+            for (AvailableSlot slot : slots) {
+                if (out.length() > 1) {
+                    out.append(',');
+                }
+                HealthProfessional professional = slot.getHealthProfessional();
+                out.append("{\"timeSlot\":").append(Json.quote(slot.getTimeSlot()))
+                        .append(",\"professionalId\":").append(professional.getId())
+                        .append(",\"professionalName\":").append(Json.quote(professional.getName()))
+                        .append('}');
+            }
+            send(exchange, 200, out.append(']').toString());
+        } catch (IllegalArgumentException e) {
+            send(exchange, 400, error(e.getMessage()));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static StringBuilder appointmentJson(StringBuilder out, Appointment appointment) {
+        HealthProfessional professional = appointment.getHealthProfessional();
+        return out.append("{\"patientName\":").append(Json.quote(appointment.getPatientName()))
+                .append(",\"mobile\":").append(Json.quote(appointment.getMobile()))
+                .append(",\"timeSlot\":").append(Json.quote(appointment.getTimeSlot()))
+                .append(",\"professionalId\":").append(professional.getId())
+                .append(",\"professionalName\":").append(Json.quote(professional.getName()))
+                .append('}');
+    }
+
+    private static String error(String message) {
+        return "{\"error\":" + Json.quote(message) + "}";
+    }
+
+    private static String required(Map<String, String> fields, String name) {
+        String value = fields.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing field: " + name);
+        }
+        return value;
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> result = new HashMap<>();
+        if (query == null || query.isEmpty()) {
+            return result;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            result.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return result;
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
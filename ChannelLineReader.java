@@ -0,0 +1,107 @@
+package aaa;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// 从通道按行读取 UTF-8 文本：整块读入直接内存缓冲区，复制到堆上的数组后在字节中查找换行，每行单独解码
+// '\n' 不会出现在 UTF-8 多字节字符的中间，所以不需要先解码整块内容
+// 内存占用只取决于缓冲区大小和最长的一行，一行超过 maxLineBytes 时抛出 IllegalArgumentException；
+// 行尾的 "\n" 或 "\r\n" 不包括在返回的行中，可以由 getLineEnding 取得；无效的 UTF-8 替换为 U+FFFD
+final class ChannelLineReader {
+    static final int DEFAULT_MAX_LINE_BYTES = 1 << 20;
+
+    private final ReadableByteChannel channel;
+    private final ByteBuffer direct;
+    private final int maxLineBytes;
+    // 已读入但还没有返回的字节为 bytes[start ... end)
+    private byte[] bytes;
+    private int start;
+    private int end;
+    private boolean endOfInput;
+    private long lineNumber;
+    private String lineEnding = "";
+
+    ChannelLineReader(ReadableByteChannel channel) {
+        this(channel, ChannelTextWriter.DEFAULT_BUFFER_BYTES, DEFAULT_MAX_LINE_BYTES);
+    }
+
+    ChannelLineReader(ReadableByteChannel channel, int bufferBytes, int maxLineBytes) {
+        this.channel = channel;
+        this.direct = ByteBuffer.allocateDirect(bufferBytes);
+        this.bytes = new byte[bufferBytes];
+        this.maxLineBytes = maxLineBytes;
+    }
+
+    // 读取下一行，没有更多内容时返回 null
+    public String readLine() throws IOException {
+        int scan = start;
+        while (true) {
+            while (scan < end && bytes[scan] != '\n') {
+                scan++;
+            }
+            if (scan < end) {
+                String line = decode(start, scan, true);
+                start = scan + 1;
+                return line;
+            }
+            if (endOfInput) {
+                if (start == end) {
+                    return null;
+                }
+                String line = decode(start, end, false);
+                start = end;
+                return line;
+            }
+            int scanned = scan - start;
+            fill();
+            scan = start + scanned;
+        }
+    }
+
+    // 已读取的行数，也就是最后一次返回的行的行号（从 1 开始）
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    // 最后一次返回的行的行尾："\r\n"、"\n"，最后一行没有换行时为 ""
+    public String getLineEnding() {
+        return lineEnding;
+    }
+
+    private String decode(int from, int to, boolean newline) {
+        lineEnding = newline ? "\n" : "";
+        if (newline && to > from && bytes[to - 1] == '\r') {
+            to--;
+            lineEnding = "\r\n";
+        }
+        lineNumber++;
+        return new String(bytes, from, to - from, StandardCharsets.UTF_8);
+    }
+
+    // 把未返回的字节移到数组开头，再读入下一块；一行比数组还长时数组加倍
+    private void fill() throws IOException {
+        int pending = end - start;
+        System.arraycopy(bytes, start, bytes, 0, pending);
+        start = 0;
+        end = pending;
+        if (end == bytes.length) {
+            if (end >= maxLineBytes) {
+                throw new IllegalArgumentException("Line longer than " + maxLineBytes + " bytes at line "
+                        + (lineNumber + 1));
+            }
+            bytes = Arrays.copyOf(bytes, bytes.length * 2);
+        }
+        direct.clear().limit(Math.min(direct.capacity(), bytes.length - end));
+        int read = channel.read(direct);
+        if (read < 0) {
+            endOfInput = true;
+            return;
+        }
+        direct.flip();
+        direct.get(bytes, end, read);
+        end += read;
+    }
+}
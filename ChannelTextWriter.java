@@ -0,0 +1,112 @@
+package aaa;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+// 把文本以 UTF-8 写入通道：字符先放入数组，满了之后编码并复制到直接内存缓冲区，缓冲区满了再整块写出
+// 编码在堆上的数组之间进行，JDK 对这种情况有 ASCII 的快速路径，直接内存缓冲区只用于通道读写
+// 内存占用固定，与写出的数据量无关；不关闭通道，写完后调用 flush
+final class ChannelTextWriter implements Appendable, Flushable {
+    static final int DEFAULT_BUFFER_BYTES = 1 << 20;
+
+    private final WritableByteChannel channel;
+    private final char[] chars;
+    private int count;
+    private final CharBuffer charView;
+    // 一个字符最多编码为 3 个字节（代理对为 2 个字符 4 个字节），encoded 总能放下 chars 的编码结果
+    private final ByteBuffer encoded;
+    private final ByteBuffer bytes;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private long writtenBytes;
+
+    ChannelTextWriter(WritableByteChannel channel) {
+        this(channel, DEFAULT_BUFFER_BYTES);
+    }
+
+    ChannelTextWriter(WritableByteChannel channel, int bufferBytes) {
+        this.channel = channel;
+        this.chars = new char[bufferBytes / 4];
+        this.charView = CharBuffer.wrap(chars);
+        this.encoded = ByteBuffer.allocate(chars.length * 3);
+        this.bytes = ByteBuffer.allocateDirect(bufferBytes);
+    }
+
+    @Override
+    public ChannelTextWriter append(CharSequence text) throws IOException {
+        if (!(text instanceof String)) {
+            return append(text, 0, text.length());
+        }
+        String value = (String) text;
+        int start = 0;
+        while (start < value.length()) {
+            if (count == chars.length) {
+                encode();
+            }
+            int end = Math.min(value.length(), start + chars.length - count);
+            value.getChars(start, end, chars, count);
+            count += end - start;
+            start = end;
+        }
+        return this;
+    }
+
+    @Override
+    public ChannelTextWriter append(CharSequence text, int start, int end) throws IOException {
+        for (int i = start; i < end; i++) {
+            append(text.charAt(i));
+        }
+        return this;
+    }
+
+    @Override
+    public ChannelTextWriter append(char c) throws IOException {
+        if (count == chars.length) {
+            encode();
+        }
+        chars[count++] = c;
+        return this;
+    }
+
+    // 把缓冲区中的所有内容写入通道
+    @Override
+    public void flush() throws IOException {
+        encode();
+        write();
+    }
+
+    // 已写入通道的字节数
+    public long getWrittenBytes() {
+        return writtenBytes;
+    }
+
+    // 编码数组中的字符并复制到直接内存缓冲区；被数组边界拆开的代理对留到下一次编码
+    private void encode() throws IOException {
+        charView.limit(count).position(0);
+        encoded.clear();
+        encoder.encode(charView, encoded, false);
+        int left = charView.remaining();
+        System.arraycopy(chars, charView.position(), chars, 0, left);
+        count = left;
+        encoded.flip();
+        if (bytes.remaining() < encoded.remaining()) {
+            write();
+        }
+        bytes.put(encoded);
+    }
+
+    private void write() throws IOException {
+        bytes.flip();
+        while (bytes.hasRemaining()) {
+            writtenBytes += channel.write(bytes);
+        }
+        bytes.clear();
+    }
+}
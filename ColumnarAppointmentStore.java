@@ -0,0 +1,346 @@
+package aaa;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.IntFunction;
+
+// 列式存储引擎：每个预约只占用几个基本类型数组中的一行，不为每个预约创建对象
+//   mobiles      手机号编码为 long（数字 * 32 + 位数，保留开头的 0），0 表示该行已删除
+//   slots        当天的分钟数
+//   professions  医生 id，通过 professionals 查找医生对象
+//   nameOffsets  病人姓名在 names 中的位置，names 中每个姓名为 2 字节长度 + UTF-8 字节
+// 按手机号查找使用开放寻址哈希表，表中只保存行号
+// Appointment 对象只在需要时生成，生成的对象改名时通过 updatePatientName 写回存储
+class ColumnarAppointmentStore implements AppointmentStore {
+    private static final int MAX_MOBILE_DIGITS = 17;
+    private static final int NULL_NAME = 0xFFFF;
+
+    private final IntFunction<HealthProfessional> professionals;
+    private AppointmentListener renameListener;
+
+    private long[] mobiles;
+    private int[] slots;
+    private int[] professions;
+    private int[] nameOffsets;
+    private byte[] names;
+    private int namesLength;
+    private int rows;     // 已使用的行数，包括已删除的行
+    private int deleted;  // 已删除的行数
+
+    // 开放寻址哈希表，保存 行号 + 1，0 表示空位
+    private int[] index;
+
+    public ColumnarAppointmentStore(IntFunction<HealthProfessional> professionals) {
+        this(professionals, 1024);
+    }
+
+    public ColumnarAppointmentStore(IntFunction<HealthProfessional> professionals, int initialCapacity) {
+        this.professionals = professionals;
+        int capacity = Math.max(initialCapacity, 16);
+        mobiles = new long[capacity];
+        slots = new int[capacity];
+        professions = new int[capacity];
+        nameOffsets = new int[capacity];
+        names = new byte[capacity * 16];
+        index = new int[tableSize(capacity)];
+    }
+
+    @Override
+    public boolean contains(String mobile) {
+        long key = encodeMobileOrZero(mobile);
+        return key != 0 && find(key) >= 0;
+    }
+
+    @Override
+    public Appointment get(String mobile) {
+        long key = encodeMobileOrZero(mobile);
+        if (key == 0) {
+            return null;
+        }
+        int row = find(key);
+        return row < 0 ? null : view(row);
+    }
+
+    @Override
+    public void validate(Appointment appointment) {
+        int professionalId = appointment.getHealthProfessional().getId();
+        if (professionals.apply(professionalId) == null) {
+            throw new IllegalArgumentException("Unknown health professional id: " + professionalId);
+        }
+        encodeMobile(appointment.getMobile());
+    }
+
+    @Override
+    public void put(Appointment appointment) {
+        validate(appointment);
+        int professionalId = appointment.getHealthProfessional().getId();
+        long key = encodeMobile(appointment.getMobile());
+        if (rows == mobiles.length) {
+            if (deleted > rows / 2) {
+                compact();
+            } else {
+                grow();
+            }
+        }
+        int row = rows++;
+        mobiles[row] = key;
+        slots[row] = appointment.getSlotMinute();
+        professions[row] = professionalId;
+        nameOffsets[row] = appendName(appointment.getPatientName());
+        insertIndex(key, row);
+        appointment.setListener(renameListener);
+    }
+
+    @Override
+    public Appointment remove(String mobile) {
+        long key = encodeMobileOrZero(mobile);
+        if (key == 0) {
+            return null;
+        }
+        int row = find(key);
+        if (row < 0) {
+            return null;
+        }
+        Appointment appointment = view(row);
+        appointment.setListener(null);
+        removeIndex(key);
+        mobiles[row] = 0;
+        deleted++;
+        return appointment;
+    }
+
+    @Override
+    public int size() {
+        return rows - deleted;
+    }
+
+    @Override
+    public void ensureCapacity(int additional) {
+        if (rows + additional > mobiles.length) {
+            resize(rows + additional);
+        }
+    }
+
+    // 新的姓名追加到 names 末尾，旧姓名占用的空间在 compact 时回收
+    @Override
+    public boolean updatePatientName(Appointment appointment) {
+        long key = encodeMobileOrZero(appointment.getMobile());
+        int row = key == 0 ? -1 : find(key);
+        if (row < 0) {
+            return false;
+        }
+        nameOffsets[row] = appendName(appointment.getPatientName());
+        return true;
+    }
+
+    @Override
+    public void setRenameListener(AppointmentListener listener) {
+        this.renameListener = listener;
+    }
+
+    // 按行号顺序（即预约顺序）遍历，跳过已删除的行
+    @Override
+    public Iterator<Appointment> iterator() {
+        return new Iterator<Appointment>() {
+            private int row = nextRow(0);
+
+            @Override
+            public boolean hasNext() {
+                return row < rows;
+            }
+
+            @Override
+            public Appointment next() {
+                if (row >= rows) {
+                    throw new NoSuchElementException();
+                }
+                Appointment appointment = view(row);
+                row = nextRow(row + 1);
+                return appointment;
+            }
+        };
+    }
+
+    // 占用的堆内存（字节），不包括 Appointment 视图
+    public long memoryFootprint() {
+        return (long) mobiles.length * (8 + 4 + 4 + 4) + names.length + (long) index.length * 4;
+    }
+
+    private int nextRow(int row) {
+        while (row < rows && mobiles[row] == 0) {
+            row++;
+        }
+        return row;
+    }
+
+    private Appointment view(int row) {
+        Appointment appointment = new Appointment(readName(nameOffsets[row]), decodeMobile(mobiles[row]),
+                Appointment.formatTimeSlot(slots[row]), professionals.apply(professions[row]));
+        appointment.setListener(renameListener);
+        return appointment;
+    }
+
+    private int appendName(String name) {
+        byte[] bytes = name == null ? new byte[0] : name.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length >= NULL_NAME) {
+            throw new IllegalArgumentException("Patient name too long: " + bytes.length + " bytes");
+        }
+        int needed = namesLength + 2 + bytes.length;
+        if (needed > names.length) {
+            names = Arrays.copyOf(names, Math.max(needed, names.length + (names.length >> 1)));
+        }
+        int offset = namesLength;
+        int length = name == null ? NULL_NAME : bytes.length;
+        names[offset] = (byte) (length >>> 8);
+        names[offset + 1] = (byte) length;
+        System.arraycopy(bytes, 0, names, offset + 2, bytes.length);
+        namesLength = needed;
+        return offset;
+    }
+
+    private String readName(int offset) {
+        int length = (names[offset] & 0xFF) << 8 | (names[offset + 1] & 0xFF);
+        return length == NULL_NAME ? null : new String(names, offset + 2, length, StandardCharsets.UTF_8);
+    }
+
+    private void grow() {
+        resize(mobiles.length + (mobiles.length >> 1));
+    }
+
+    private void resize(int capacity) {
+        mobiles = Arrays.copyOf(mobiles, capacity);
+        slots = Arrays.copyOf(slots, capacity);
+        professions = Arrays.copyOf(professions, capacity);
+        nameOffsets = Arrays.copyOf(nameOffsets, capacity);
+        if (index.length < tableSize(capacity)) {
+            rebuildIndex(tableSize(capacity));
+        }
+    }
+
+    // 去掉已删除的行和不再使用的姓名，保持原来的顺序
+    private void compact() {
+        byte[] oldNames = names;
+        names = new byte[Math.max(namesLength, 16)];
+        namesLength = 0;
+        int live = 0;
+        for (int row = 0; row < rows; row++) {
+            if (mobiles[row] == 0) {
+                continue;
+            }
+            mobiles[live] = mobiles[row];
+            slots[live] = slots[row];
+            professions[live] = professions[row];
+            int offset = nameOffsets[row];
+            int length = (oldNames[offset] & 0xFF) << 8 | (oldNames[offset + 1] & 0xFF);
+            int size = 2 + (length == NULL_NAME ? 0 : length);
+            System.arraycopy(oldNames, offset, names, namesLength, size);
+            nameOffsets[live] = namesLength;
+            namesLength += size;
+            live++;
+        }
+        Arrays.fill(mobiles, live, rows, 0);
+        rows = live;
+        deleted = 0;
+        rebuildIndex(index.length);
+    }
+
+    private void rebuildIndex(int size) {
+        index = new int[size];
+        for (int row = 0; row < rows; row++) {
+            if (mobiles[row] != 0) {
+                insertIndex(mobiles[row], row);
+            }
+        }
+    }
+
+    // 不小于 capacity * 4 / 3 的 2 的幂，负载因子不超过 0.75
+    private static int tableSize(int capacity) {
+        int minimum = Math.max(capacity, 8) / 3 * 4 + 4;
+        return Integer.highestOneBit(minimum - 1) << 1;
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private int find(long key) {
+        int mask = index.length - 1;
+        for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            int entry = index[slot];
+            if (entry == 0) {
+                return -1;
+            }
+            if (mobiles[entry - 1] == key) {
+                return entry - 1;
+            }
+        }
+    }
+
+    private void insertIndex(long key, int row) {
+        int mask = index.length - 1;
+        int slot = hash(key) & mask;
+        while (index[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        index[slot] = row + 1;
+    }
+
+    // 线性探测的删除：把后面同一探测链上的条目向前移动，不留墓碑
+    private void removeIndex(long key) {
+        int mask = index.length - 1;
+        int slot = hash(key) & mask;
+        while (mobiles[index[slot] - 1] != key) {
+            slot = (slot + 1) & mask;
+        }
+        int hole = slot;
+        for (int next = (hole + 1) & mask; index[next] != 0; next = (next + 1) & mask) {
+            int home = hash(mobiles[index[next] - 1]) & mask;
+            // 如果 next 的理想位置不在 (hole, next] 范围内，就可以移动到 hole
+            boolean between = hole <= next ? (hole < home && home <= next) : (hole < home || home <= next);
+            if (!between) {
+                index[hole] = index[next];
+                hole = next;
+            }
+        }
+        index[hole] = 0;
+    }
+
+    // 只接受数字组成的手机号，最多 MAX_MOBILE_DIGITS 位
+    static long encodeMobile(String mobile) {
+        long key = encodeMobileOrZero(mobile);
+        if (key == 0) {
+            throw new IllegalArgumentException("Mobile must be 1-" + MAX_MOBILE_DIGITS + " digits: " + mobile);
+        }
+        return key;
+    }
+
+    // 不能编码的手机号返回 0
+    static long encodeMobileOrZero(String mobile) {
+        if (mobile == null || mobile.isEmpty() || mobile.length() > MAX_MOBILE_DIGITS) {
+            return 0;
+        }
+        long value = 0;
+        for (int i = 0; i < mobile.length(); i++) {
+            char c = mobile.charAt(i);
+            if (c < '0' || c > '9') {
+                return 0;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value * 32 + mobile.length();
+    }
+
+    static String decodeMobile(long key) {
+        int length = (int) (key & 31);
+        long value = key >>> 5;
+        char[] digits = new char[length];
+        for (int i = length - 1; i >= 0; i--) {
+            digits[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return new String(digits);
+    }
+}
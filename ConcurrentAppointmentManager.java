@@ -0,0 +1,156 @@
+package aaa;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+// 线程安全的预约管理器，按医生 id 分段加锁，不同医生的预约可以并行处理
+// 与 AppointmentManager 不同，这里不向控制台打印结果，而是通过返回值报告，避免 System.out 成为全局锁
+class ConcurrentAppointmentManager {
+    private static final int DEFAULT_STRIPES = 64;
+
+    // 预约记录，序号用于保持预约顺序
+    private static final class Booking {
+        final long sequence;
+        final Appointment appointment;
+
+        Booking(long sequence, Appointment appointment) {
+            this.sequence = sequence;
+            this.appointment = appointment;
+        }
+    }
+
+    private final ReentrantLock[] locks;
+    private final AtomicLong sequence = new AtomicLong();
+    private final ConcurrentHashMap<String, Booking> byMobile = new ConcurrentHashMap<>();
+    // 按预约顺序排列，读操作无需加锁
+    private final ConcurrentSkipListMap<Long, Appointment> ordered = new ConcurrentSkipListMap<>();
+    // 每个医生的时间表，与 AppointmentManager 使用相同的位图；只能在持有该医生对应的锁时访问
+    private final ConcurrentHashMap<Integer, ProfessionalSchedule> schedules = new ConcurrentHashMap<>();
+    private final CopyOnWriteArrayList<AppointmentListener> listeners = new CopyOnWriteArrayList<>();
+
+    public ConcurrentAppointmentManager() {
+        this(DEFAULT_STRIPES);
+    }
+
+    // 锁的数量会向上取整为 2 的幂
+    public ConcurrentAppointmentManager(int stripes) {
+        if (stripes <= 0) {
+            throw new IllegalArgumentException("stripes must be positive: " + stripes);
+        }
+        int size = Integer.highestOneBit(stripes - 1) << 1;
+        locks = new ReentrantLock[Math.max(size, 1)];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    // 监听器在持有该医生对应的锁时调用，同一医生的通知是有序的，不同医生的通知可能并发，实现必须是线程安全的
+    public void addListener(AppointmentListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(AppointmentListener listener) {
+        listeners.remove(listener);
+    }
+
+    private ReentrantLock lockFor(int professionalId) {
+        int h = professionalId * 0x9E3779B9;
+        return locks[(h ^ (h >>> 16)) & (locks.length - 1)];
+    }
+
+    // 添加预约，同一手机号只能有一个预约，同一医生的时段不能重叠
+    // 先在医生的锁内检查时段，再用 putIfAbsent 占用手机号，手机号索引中只会出现已经成功的预约
+    public boolean addAppointment(Appointment appointment) {
+        int professionalId = appointment.getHealthProfessional().getId();
+        Booking booking = new Booking(sequence.incrementAndGet(), appointment);
+        ReentrantLock lock = lockFor(professionalId);
+        lock.lock();
+        try {
+            ProfessionalSchedule schedule = schedules.get(professionalId);
+            if (schedule != null && !schedule.isFree(appointment.getSlotMinute())) {
+                return false;
+            }
+            // 不同医生的预约持有不同的锁，同一手机号由 putIfAbsent 保证唯一
+            if (byMobile.putIfAbsent(appointment.getMobile(), booking) != null) {
+                return false;
+            }
+            if (schedule == null) {
+                schedule = new ProfessionalSchedule();
+                schedules.put(professionalId, schedule);
+            }
+            schedule.occupy(appointment.getSlotMinute());
+            ordered.put(booking.sequence, appointment);
+            for (AppointmentListener listener : listeners) {
+                listener.appointmentAdded(appointment);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 按手机号查找预约，不加锁
+    public Appointment findAppointment(String mobile) {
+        Booking booking = byMobile.get(mobile);
+        return booking == null ? null : booking.appointment;
+    }
+
+    public int size() {
+        return byMobile.size();
+    }
+
+    // 查询医生在某个时段是否空闲
+    public boolean isAvailable(HealthProfessional professional, String timeSlot) {
+        int start = Appointment.parseTimeSlot(timeSlot);
+        ReentrantLock lock = lockFor(professional.getId());
+        lock.lock();
+        try {
+            ProfessionalSchedule schedule = schedules.get(professional.getId());
+            return schedule == null || schedule.isFree(start);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 打印时不加锁，遍历的是弱一致性的视图，写操作可以同时进行
+    public void printExistingAppointments() {
+        if (ordered.isEmpty()) {
+            System.out.println("No existing appointments.");
+            return;
+        }
+        AppointmentReportWriter.printAll(ordered.values());
+    }
+
+    // 取消预约
+    public boolean cancelAppointment(String mobile) {
+        Booking booking = byMobile.get(mobile);
+        if (booking == null) {
+            return false;
+        }
+        Appointment appointment = booking.appointment;
+        int professionalId = appointment.getHealthProfessional().getId();
+        ReentrantLock lock = lockFor(professionalId);
+        lock.lock();
+        try {
+            // 可能已被其他线程取消
+            if (!byMobile.remove(mobile, booking)) {
+                return false;
+            }
+            ProfessionalSchedule schedule = schedules.get(professionalId);
+            schedule.release(appointment.getSlotMinute());
+            if (schedule.isEmpty()) {
+                schedules.remove(professionalId);
+            }
+            ordered.remove(booking.sequence);
+            for (AppointmentListener listener : listeners) {
+                listener.appointmentCanceled(appointment);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
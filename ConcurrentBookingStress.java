@@ -0,0 +1,176 @@
+package aaa;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 并发压力测试：线程数从 1 增加到 CPU 核数，观察 ConcurrentAppointmentManager 的吞吐量
+// 每个线程只为自己负责的医生预约和取消，因此不同线程之间不会争用同一把锁
+// 最后是争用检查：所有线程为同一批医生预约相互重叠的时段，手机号在不同医生之间重复，
+// 结束后检查没有重复的手机号和重叠的时段，并且预约数等于成功的预约数减去成功的取消数
+public class ConcurrentBookingStress {
+    private static final int PROFESSIONALS_PER_THREAD = 16;
+    private static final int SLOTS_PER_DAY = 24 * 60 / Appointment.SLOT_MINUTES;
+    private static final int CONTENDED_PROFESSIONALS = 8;
+    private static final int CONTENDED_MOBILES = 200;
+    private static final int CONTENDED_OPS = 200_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        long millis = args.length > 0 ? Long.parseLong(args[0]) : 1000;
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        List<Integer> threadCounts = new ArrayList<>();
+        for (int threads = 1; threads < cores; threads *= 2) {
+            threadCounts.add(threads);
+        }
+        threadCounts.add(cores);
+
+        System.out.println("threads,ops,ops_per_sec,speedup");
+        double baseline = 0;
+        for (int threads : threadCounts) {
+            run(threads, millis / 2);  // 预热
+            long ops = run(threads, millis);
+            double rate = ops * 1000.0 / millis;
+            if (threads == 1) {
+                baseline = rate;
+            }
+            System.out.printf("%d,%d,%.0f,%.2f%n", threads, ops, rate, rate / baseline);
+        }
+        contended(Math.max(cores, 4));
+    }
+
+    private static void contended(int threads) throws InterruptedException {
+        ConcurrentAppointmentManager manager = new ConcurrentAppointmentManager(4);
+        List<HealthProfessional> professionals = new ArrayList<>();
+        for (int id = 0; id < CONTENDED_PROFESSIONALS; id++) {
+            professionals.add(new GeneralPractitioner(id, "Dr. " + id, "General Medicine", "Primary Care"));
+        }
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicLong added = new AtomicLong();
+        AtomicLong canceled = new AtomicLong();
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Random random = new Random(t);
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < CONTENDED_OPS / threads; i++) {
+                    String mobile = String.valueOf(1_000_000_000L + random.nextInt(CONTENDED_MOBILES));
+                    if (random.nextInt(4) == 0) {
+                        if (manager.cancelAppointment(mobile)) {
+                            canceled.incrementAndGet();
+                        }
+                        continue;
+                    }
+                    // 以 10 分钟为间隔的开始时间，相邻的时段相互重叠
+                    int minute = random.nextInt(24 * 6) * 10;
+                    Appointment appointment = new Appointment("Patient " + mobile, mobile,
+                            Appointment.formatTimeSlot(minute),
+                            professionals.get(random.nextInt(CONTENDED_PROFESSIONALS)));
+                    if (manager.addAppointment(appointment)) {
+                        added.incrementAndGet();
+                    }
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        // 手机号索引中每个手机号只有一个预约；按医生检查时段是否重叠
+        int found = 0;
+        Map<Integer, TreeMap<Integer, Appointment>> schedules = new HashMap<>();
+        for (int i = 0; i < CONTENDED_MOBILES; i++) {
+            Appointment appointment = manager.findAppointment(String.valueOf(1_000_000_000L + i));
+            if (appointment == null) {
+                continue;
+            }
+            found++;
+            TreeMap<Integer, Appointment> schedule = schedules.computeIfAbsent(
+                    appointment.getHealthProfessional().getId(), id -> new TreeMap<>());
+            Map.Entry<Integer, Appointment> before = schedule.floorEntry(appointment.getSlotMinute());
+            Map.Entry<Integer, Appointment> after = schedule.ceilingEntry(appointment.getSlotMinute());
+            if (before != null && before.getKey() + Appointment.SLOT_MINUTES > appointment.getSlotMinute()
+                    || after != null && after.getKey() < appointment.getSlotMinute() + Appointment.SLOT_MINUTES) {
+                throw new IllegalStateException("Double booking for professional "
+                        + appointment.getHealthProfessional().getId() + " at " + appointment.getTimeSlot());
+            }
+            schedule.put(appointment.getSlotMinute(), appointment);
+        }
+        long expected = added.get() - canceled.get();
+        if (manager.size() != expected || found != expected) {
+            throw new IllegalStateException("Expected " + expected + " appointments but size is " + manager.size()
+                    + " and " + found + " were found");
+        }
+        System.out.println("contended_threads,added,canceled,final,result");
+        System.out.printf("%d,%d,%d,%d,ok%n", threads, added.get(), canceled.get(), expected);
+    }
+
+    // 返回在指定时间内完成的预约 + 取消操作数
+    private static long run(int threads, long millis) throws InterruptedException {
+        ConcurrentAppointmentManager manager = new ConcurrentAppointmentManager(threads * PROFESSIONALS_PER_THREAD);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicLong total = new AtomicLong();
+        List<Thread> workers = new ArrayList<>();
+        long[] deadline = new long[1];
+
+        for (int t = 0; t < threads; t++) {
+            Appointment[] bookings = prepare(t);
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long ops = 0;
+                int i = 0;
+                while (System.nanoTime() < deadline[0]) {
+                    Appointment appointment = bookings[i];
+                    if (manager.addAppointment(appointment)) {
+                        ops++;
+                    }
+                    if (manager.cancelAppointment(appointment.getMobile())) {
+                        ops++;
+                    }
+                    i = i + 1 == bookings.length ? 0 : i + 1;
+                }
+                total.addAndGet(ops);
+            });
+            workers.add(worker);
+            worker.start();
+        }
+
+        deadline[0] = System.nanoTime() + millis * 1_000_000L;
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return total.get();
+    }
+
+    private static Appointment[] prepare(int thread) {
+        Appointment[] bookings = new Appointment[PROFESSIONALS_PER_THREAD * SLOTS_PER_DAY];
+        int n = 0;
+        for (int p = 0; p < PROFESSIONALS_PER_THREAD; p++) {
+            int id = thread * PROFESSIONALS_PER_THREAD + p;
+            HealthProfessional professional = new GeneralPractitioner(id, "Dr. " + id, "General Medicine", "Primary Care");
+            for (int s = 0; s < SLOTS_PER_DAY; s++) {
+                int minute = s * Appointment.SLOT_MINUTES;
+                String slot = String.format("%02d:%02d", minute / 60, minute % 60);
+                bookings[n++] = new Appointment("Patient " + n, String.valueOf(1_000_000_000L + id * 100_000L + n), slot, professional);
+            }
+        }
+        return bookings;
+    }
+}
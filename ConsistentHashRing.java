@@ -0,0 +1,80 @@
+package aaa;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// 一致性哈希环：每个节点在环上放 virtualNodes 个虚拟点，键属于顺时针方向第一个虚拟点的节点
+// 加入或移除一个节点时，只有落在这个节点的虚拟点上的键改变归属，约为 1 / 节点数
+// 不是线程安全的，由调用者加锁
+final class ConsistentHashRing<N> {
+    private final int virtualNodes;
+    private final TreeMap<Integer, N> ring = new TreeMap<>();
+    private final LinkedHashMap<String, N> nodes = new LinkedHashMap<>();
+
+    ConsistentHashRing(int virtualNodes) {
+        if (virtualNodes <= 0) {
+            throw new IllegalArgumentException("Invalid virtual node count: " + virtualNodes);
+        }
+        this.virtualNodes = virtualNodes;
+    }
+
+    public void add(String name, N node) {
+        if (nodes.containsKey(name)) {
+            throw new IllegalArgumentException("Duplicate node: " + name);
+        }
+        nodes.put(name, node);
+        for (int i = 0; i < virtualNodes; i++) {
+            // 极少数情况下两个虚拟点重合，后加入的节点不占用这个点
+            ring.putIfAbsent(point(name, i), node);
+        }
+    }
+
+    public N remove(String name) {
+        N node = nodes.remove(name);
+        if (node != null) {
+            for (int i = 0; i < virtualNodes; i++) {
+                ring.remove(point(name, i), node);
+            }
+        }
+        return node;
+    }
+
+    // key 所属的节点，没有节点时返回 null
+    public N nodeFor(int key) {
+        if (ring.isEmpty()) {
+            return null;
+        }
+        Map.Entry<Integer, N> entry = ring.ceilingEntry(mix(key));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    public N get(String name) {
+        return nodes.get(name);
+    }
+
+    // 按加入顺序
+    public List<N> nodes() {
+        return new ArrayList<>(nodes.values());
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    private static int point(String name, int replica) {
+        return mix(name.hashCode() * 0x9E3779B9 + replica);
+    }
+
+    // murmur3 的最后一步，把相邻的 id 打散到整个环上
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -0,0 +1,110 @@
+package aaa;
+
+import java.util.Arrays;
+
+// 手机号的计数布隆过滤器：mightContain 返回 false 时该手机号一定没有预约，返回 true 时可能有
+// 每个位置是一个 4 位计数器（一个 long 存 16 个），删除时计数减一，取消预约后不会留下过期的位
+// 计数器到 15 后不再增减，这时只会多出误判，不会漏判；重建过滤器可以消除这些饱和的计数器
+// 一个键的所有位置都落在同一个 64 字节的块里，一次查询最多只有一次缓存未命中
+final class CountingBloomFilter {
+    private static final int COUNTER_BITS = 4;
+    private static final long COUNTER_MAX = (1L << COUNTER_BITS) - 1;
+    private static final int COUNTERS_PER_WORD = 64 / COUNTER_BITS;
+    private static final int WORDS_PER_BLOCK = 8;
+    private static final int COUNTERS_PER_BLOCK = WORDS_PER_BLOCK * COUNTERS_PER_WORD;
+    // 块内位置需要 7 位，一个 64 位哈希最多提供 9 个
+    private static final int MAX_HASHES = 9;
+
+    private final long[] counters;
+    private final int blocks;
+    private final int hashes;
+    private final int capacity;
+
+    // capacity 为预计的元素个数，falsePositiveRate 为元素个数不超过 capacity 时的目标误判率
+    public CountingBloomFilter(int capacity, double falsePositiveRate) {
+        if (capacity <= 0 || !(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+            throw new IllegalArgumentException("Invalid filter size: " + capacity + ", " + falsePositiveRate);
+        }
+        double ln2 = Math.log(2);
+        // 分块会让误判率略高于理论值，多留 20% 的空间
+        double m = Math.ceil(-capacity * Math.log(falsePositiveRate) / (ln2 * ln2) * 1.2);
+        if (m / COUNTERS_PER_BLOCK * WORDS_PER_BLOCK > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Filter too large for capacity: " + capacity);
+        }
+        this.blocks = (int) Math.max(1, Math.ceil(m / COUNTERS_PER_BLOCK));
+        this.hashes = (int) Math.max(1, Math.min(MAX_HASHES, Math.round(-Math.log(falsePositiveRate) / ln2)));
+        this.capacity = capacity;
+        this.counters = new long[blocks * WORDS_PER_BLOCK];
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void add(String key) {
+        long hash = mix(key.hashCode());
+        int base = block(hash);
+        for (int i = 0; i < hashes; i++) {
+            int position = (int) (hash >>> (i * 7)) & (COUNTERS_PER_BLOCK - 1);
+            int word = base + position / COUNTERS_PER_WORD;
+            int shift = position % COUNTERS_PER_WORD * COUNTER_BITS;
+            if ((counters[word] >>> shift & COUNTER_MAX) != COUNTER_MAX) {
+                counters[word] += 1L << shift;
+            }
+        }
+    }
+
+    // 只能删除之前加入过的元素，否则会把别的元素的计数减掉，导致漏判
+    public void remove(String key) {
+        long hash = mix(key.hashCode());
+        int base = block(hash);
+        for (int i = 0; i < hashes; i++) {
+            int position = (int) (hash >>> (i * 7)) & (COUNTERS_PER_BLOCK - 1);
+            int word = base + position / COUNTERS_PER_WORD;
+            int shift = position % COUNTERS_PER_WORD * COUNTER_BITS;
+            long count = counters[word] >>> shift & COUNTER_MAX;
+            if (count != 0 && count != COUNTER_MAX) {
+                counters[word] -= 1L << shift;
+            }
+        }
+    }
+
+    public boolean mightContain(String key) {
+        long hash = mix(key.hashCode());
+        int base = block(hash);
+        for (int i = 0; i < hashes; i++) {
+            int position = (int) (hash >>> (i * 7)) & (COUNTERS_PER_BLOCK - 1);
+            int shift = position % COUNTERS_PER_WORD * COUNTER_BITS;
+            if ((counters[base + position / COUNTERS_PER_WORD] >>> shift & COUNTER_MAX) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void clear() {
+        Arrays.fill(counters, 0);
+    }
+
+    // 计数器占用的字节数
+    public long memoryFootprint() {
+        return (long) counters.length * Long.BYTES;
+    }
+
+    // 块的第一个 long 的下标；块内位置直接取哈希的各段，选块前再混合一次，避免两者相关
+    private int block(long hash) {
+        long h = (hash ^ hash >>> 29) * 0xbf58476d1ce4e5b9L;
+        return (int) (((h >>> 32) * blocks) >>> 32) * WORDS_PER_BLOCK;
+    }
+
+    // String 会缓存 hashCode，这里只把它混合成 64 位；hashCode 相同的手机号只会互相造成误判
+    private static long mix(int hashCode) {
+        long h = hashCode * 0x9e3779b97f4a7c15L;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,416 @@
+package aaa;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// 固定布局的二进制预约文件，打开时用 FileChannel.map 映射各个部分，不解析任何记录
+// 记录只在访问时读取，HealthProfessional 和 Appointment 对象也只在访问时创建
+// 文件布局（大端序）：
+//   文件头        HEADER_BYTES 字节，魔数、版本、记录数和各部分的位置
+//   医生表        每个医生 PROFESSIONAL_BYTES 字节：id、类别、姓名/专业/类型在字符串区的位置，按 id 排序
+//   预约表        每个预约 APPOINTMENT_BYTES 字节：手机号编码、当天的分钟数、医生 id、病人姓名的位置
+//   手机号索引    开放寻址哈希表，与 ColumnarAppointmentStore 相同，保存 行号 + 1
+//   时间表        每个医生 SCHEDULE_BYTES 字节：预约数和 ProfessionalSchedule 的位图，顺序与医生表相同
+//   字符串区      每个字符串为 2 字节长度 + UTF-8 字节
+// 每个部分单独映射，预约表最多约 1 亿条；文件打开后只读，修改由 MappedAppointmentStore 保存在内存中
+final class MappedAppointmentFile implements Closeable {
+    private static final int MAGIC = 0x4150504D;  // "APPM"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    private static final int PROFESSIONAL_BYTES = 20;
+    private static final int APPOINTMENT_BYTES = 20;
+    private static final int SCHEDULE_BYTES = 8 + ProfessionalSchedule.WORDS * 8;
+    private static final int NULL_STRING = 0xFFFF;
+    // 预约表按行号寻址，整个预约表要能放进一个映射
+    private static final int MAX_APPOINTMENTS = Integer.MAX_VALUE / APPOINTMENT_BYTES;
+
+    private static final int KIND_HEALTH_PROFESSIONAL = 0;
+    private static final int KIND_GENERAL_PRACTITIONER = 1;
+    private static final int KIND_SPECIALIST = 2;
+
+    private final FileChannel channel;
+    private final int professionalCount;
+    private final int appointmentCount;
+    private final MappedByteBuffer professionalTable;
+    private final MappedByteBuffer appointmentTable;
+    private final MappedByteBuffer index;
+    private final MappedByteBuffer scheduleTable;
+    private final MappedByteBuffer strings;
+    private final int indexMask;
+    // 按医生表的顺序缓存已创建的医生对象，同一医生总是返回同一个对象
+    private final HealthProfessional[] professionals;
+
+    private MappedAppointmentFile(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IOException("Not an appointment file: " + file);
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException("Not an appointment file: " + file);
+            }
+            if (header.getInt(4) != VERSION) {
+                throw new IOException("Unsupported appointment file version " + header.getInt(4) + ": " + file);
+            }
+            professionalCount = header.getInt(8);
+            appointmentCount = header.getInt(12);
+            int indexSize = header.getInt(16);
+            long appointmentsOffset = header.getLong(24);
+            long indexOffset = header.getLong(32);
+            long schedulesOffset = header.getLong(40);
+            long stringsOffset = header.getLong(48);
+            long stringsLength = header.getLong(56);
+            if (stringsOffset + stringsLength != channel.size()) {
+                throw new IOException("Corrupt appointment file: " + file);
+            }
+            professionalTable = map(HEADER_BYTES, (long) professionalCount * PROFESSIONAL_BYTES);
+            appointmentTable = map(appointmentsOffset, (long) appointmentCount * APPOINTMENT_BYTES);
+            index = map(indexOffset, (long) indexSize * 4);
+            scheduleTable = map(schedulesOffset, (long) professionalCount * SCHEDULE_BYTES);
+            strings = map(stringsOffset, stringsLength);
+            indexMask = indexSize - 1;
+            professionals = new HealthProfessional[professionalCount];
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // 映射文件；只读取文件头
+    public static MappedAppointmentFile open(Path file) throws IOException {
+        return new MappedAppointmentFile(file);
+    }
+
+    // 把医生和预约写成 file，先写临时文件再原子地替换；预约的医生必须在 professionals 中
+    // 手机号重复或同一医生的时段重叠时抛出 IllegalArgumentException，不写出文件
+    // 只遍历 appointments 一次，预约记录直接写入文件，姓名先写入另一个临时文件，最后接在文件末尾
+    public static void write(Path file, Collection<? extends HealthProfessional> professionals,
+                             Iterable<Appointment> appointments) throws IOException {
+        List<HealthProfessional> sorted = new ArrayList<>(professionals);
+        sorted.sort(Comparator.comparingInt(HealthProfessional::getId));
+        HashMap<Integer, Integer> positions = new HashMap<>();
+        for (int i = 0; i < sorted.size(); i++) {
+            if (positions.put(sorted.get(i).getId(), i) != null) {
+                throw new IllegalArgumentException("Duplicate health professional id: " + sorted.get(i).getId());
+            }
+        }
+        long appointmentsOffset = HEADER_BYTES + (long) sorted.size() * PROFESSIONAL_BYTES;
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Path namesTmp = file.resolveSibling(file.getFileName() + ".names.tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+             FileChannel names = FileChannel.open(namesTmp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                     StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING,
+                     StandardOpenOption.DELETE_ON_CLOSE)) {
+            StringPool pool = new StringPool(new DataOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(names), 1 << 16)));
+            ByteBuffer head = ByteBuffer.allocate((int) appointmentsOffset);
+            head.position(HEADER_BYTES);
+            for (HealthProfessional professional : sorted) {
+                head.putInt(professional.getId());
+                head.putInt(kindOf(professional));
+                head.putInt(pool.append(professional.getName()));
+                head.putInt(pool.append(professional.getSpecialization()));
+                head.putInt(pool.append(extraOf(professional)));
+            }
+
+            out.position(appointmentsOffset);
+            DataOutputStream data = new DataOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(out), 1 << 16));
+            ProfessionalSchedule[] schedules = new ProfessionalSchedule[sorted.size()];
+            long[] keys = new long[1024];
+            int count = 0;
+            for (Appointment appointment : appointments) {
+                Integer position = positions.get(appointment.getHealthProfessional().getId());
+                if (position == null) {
+                    throw new IllegalArgumentException(
+                            "Unknown health professional id: " + appointment.getHealthProfessional().getId());
+                }
+                if (count == MAX_APPOINTMENTS) {
+                    throw new IllegalArgumentException("Too many appointments for one file");
+                }
+                if (schedules[position] == null) {
+                    schedules[position] = new ProfessionalSchedule();
+                }
+                if (!schedules[position].isFree(appointment.getSlotMinute())) {
+                    throw new IllegalArgumentException("Time slot " + appointment.getTimeSlot()
+                            + " is not available for " + appointment.getHealthProfessional().getName());
+                }
+                schedules[position].occupy(appointment.getSlotMinute());
+                if (count == keys.length) {
+                    keys = Arrays.copyOf(keys, (int) Math.min(MAX_APPOINTMENTS, keys.length * 2L));
+                }
+                long key = ColumnarAppointmentStore.encodeMobile(appointment.getMobile());
+                keys[count++] = key;
+                data.writeLong(key);
+                data.writeInt(appointment.getSlotMinute());
+                data.writeInt(appointment.getHealthProfessional().getId());
+                data.writeInt(pool.append(appointment.getPatientName()));
+            }
+            int[] table = buildIndex(keys, count);
+            for (int entry : table) {
+                data.writeInt(entry);
+            }
+            for (ProfessionalSchedule schedule : schedules) {
+                data.writeInt(schedule == null ? 0 : schedule.size());
+                data.writeInt(0);
+                for (int i = 0; i < ProfessionalSchedule.WORDS; i++) {
+                    data.writeLong(schedule == null ? 0 : schedule.word(i));
+                }
+            }
+            data.flush();
+            pool.flush();
+
+            long indexOffset = appointmentsOffset + (long) count * APPOINTMENT_BYTES;
+            long schedulesOffset = indexOffset + (long) table.length * 4;
+            long stringsOffset = schedulesOffset + (long) sorted.size() * SCHEDULE_BYTES;
+            for (long copied = 0; copied < pool.length; ) {
+                copied += names.transferTo(copied, pool.length - copied, out);
+            }
+            head.putInt(0, MAGIC);
+            head.putInt(4, VERSION);
+            head.putInt(8, sorted.size());
+            head.putInt(12, count);
+            head.putInt(16, table.length);
+            head.putLong(24, appointmentsOffset);
+            head.putLong(32, indexOffset);
+            head.putLong(40, schedulesOffset);
+            head.putLong(48, stringsOffset);
+            head.putLong(56, pool.length);
+            head.clear();
+            while (head.hasRemaining()) {
+                out.write(head, head.position());
+            }
+            out.force(true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public int getProfessionalCount() {
+        return professionalCount;
+    }
+
+    public int getAppointmentCount() {
+        return appointmentCount;
+    }
+
+    // 文件中 id 对应的医生，没有时返回 null；在按 id 排序的医生表中二分查找
+    public HealthProfessional getProfessional(int id) {
+        int low = 0;
+        int high = professionalCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int middleId = professionalTable.getInt(middle * PROFESSIONAL_BYTES);
+            if (middleId < id) {
+                low = middle + 1;
+            } else if (middleId > id) {
+                high = middle - 1;
+            } else {
+                return professionalAt(middle);
+            }
+        }
+        return null;
+    }
+
+    // 文件中所有的医生，按 id 排序
+    public List<HealthProfessional> getProfessionals() {
+        ArrayList<HealthProfessional> result = new ArrayList<>(professionalCount);
+        for (int i = 0; i < professionalCount; i++) {
+            result.add(professionalAt(i));
+        }
+        return result;
+    }
+
+    // 手机号编码（ColumnarAppointmentStore.encodeMobile）对应的行号，没有时返回 -1
+    int findRow(long mobileKey) {
+        for (int slot = hash(mobileKey) & indexMask; ; slot = (slot + 1) & indexMask) {
+            int entry = index.getInt(slot * 4);
+            if (entry == 0) {
+                return -1;
+            }
+            if (mobileKey(entry - 1) == mobileKey) {
+                return entry - 1;
+            }
+        }
+    }
+
+    long mobileKey(int row) {
+        return appointmentTable.getLong(row * APPOINTMENT_BYTES);
+    }
+
+    int slotMinute(int row) {
+        return appointmentTable.getInt(row * APPOINTMENT_BYTES + 8);
+    }
+
+    int professionalId(int row) {
+        return appointmentTable.getInt(row * APPOINTMENT_BYTES + 12);
+    }
+
+    String patientName(int row) {
+        return readString(appointmentTable.getInt(row * APPOINTMENT_BYTES + 16));
+    }
+
+    // 用第 row 行创建新的 Appointment 对象
+    Appointment appointmentAt(int row) {
+        return new Appointment(patientName(row), ColumnarAppointmentStore.decodeMobile(mobileKey(row)),
+                Appointment.formatTimeSlot(slotMinute(row)), getProfessional(professionalId(row)));
+    }
+
+    // 把文件中保存的时间表放入 schedules，只包括有预约的医生
+    void loadSchedules(Map<Integer, ProfessionalSchedule> schedules) {
+        for (int i = 0; i < professionalCount; i++) {
+            int offset = i * SCHEDULE_BYTES;
+            int bookings = scheduleTable.getInt(offset);
+            if (bookings == 0) {
+                continue;
+            }
+            long[] bits = new long[ProfessionalSchedule.WORDS];
+            for (int word = 0; word < bits.length; word++) {
+                bits[word] = scheduleTable.getLong(offset + 8 + word * 8);
+            }
+            schedules.put(professionalTable.getInt(i * PROFESSIONAL_BYTES), new ProfessionalSchedule(bits, bookings));
+        }
+    }
+
+    // 关闭文件；映射在缓冲区被回收前仍然有效
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private MappedByteBuffer map(long offset, long length) throws IOException {
+        if (offset < HEADER_BYTES || length > Integer.MAX_VALUE || offset + length > channel.size()) {
+            throw new IOException("Corrupt appointment file section at " + offset);
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+    }
+
+    private synchronized HealthProfessional professionalAt(int i) {
+        HealthProfessional professional = professionals[i];
+        if (professional == null) {
+            int offset = i * PROFESSIONAL_BYTES;
+            int id = professionalTable.getInt(offset);
+            String name = readString(professionalTable.getInt(offset + 8));
+            String specialization = readString(professionalTable.getInt(offset + 12));
+            String extra = readString(professionalTable.getInt(offset + 16));
+            switch (professionalTable.getInt(offset + 4)) {
+                case KIND_GENERAL_PRACTITIONER:
+                    professional = new GeneralPractitioner(id, name, specialization, extra);
+                    break;
+                case KIND_SPECIALIST:
+                    professional = new Specialist(id, name, specialization, extra);
+                    break;
+                default:
+                    professional = new HealthProfessional(id, name, specialization);
+                    break;
+            }
+            professionals[i] = professional;
+        }
+        return professional;
+    }
+
+    private String readString(int offset) {
+        int length = strings.getShort(offset) & 0xFFFF;
+        if (length == NULL_STRING) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        strings.get(offset + 2, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int kindOf(HealthProfessional professional) {
+        if (professional instanceof GeneralPractitioner) {
+            return KIND_GENERAL_PRACTITIONER;
+        }
+        if (professional instanceof Specialist) {
+            return KIND_SPECIALIST;
+        }
+        return KIND_HEALTH_PROFESSIONAL;
+    }
+
+    private static String extraOf(HealthProfessional professional) {
+        if (professional instanceof GeneralPractitioner) {
+            return ((GeneralPractitioner) professional).getGpType();
+        }
+        if (professional instanceof Specialist) {
+            return ((Specialist) professional).getSpecialty();
+        }
+        return null;
+    }
+
+    // 与 ColumnarAppointmentStore 的索引相同：负载因子不超过 0.75 的线性探测表，保存 行号 + 1
+    private static int[] buildIndex(long[] keys, int count) {
+        int minimum = Math.max(count, 8) / 3 * 4 + 4;
+        int[] table = new int[Integer.highestOneBit(minimum - 1) << 1];
+        int mask = table.length - 1;
+        for (int row = 0; row < count; row++) {
+            int slot = hash(keys[row]) & mask;
+            while (table[slot] != 0) {
+                if (keys[table[slot] - 1] == keys[row]) {
+                    throw new IllegalArgumentException(
+                            "Duplicate mobile: " + ColumnarAppointmentStore.decodeMobile(keys[row]));
+                }
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = row + 1;
+        }
+        return table;
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    // 字符串区：字符串按写入的顺序依次存放，append 返回字符串在字符串区中的位置
+    private static final class StringPool {
+        private final DataOutputStream out;
+        private long length;
+
+        StringPool(DataOutputStream out) {
+            this.out = out;
+        }
+
+        int append(String value) throws IOException {
+            byte[] bytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length >= NULL_STRING) {
+                throw new IllegalArgumentException("String too long: " + bytes.length + " bytes");
+            }
+            if (length + 2 + bytes.length > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Too many strings for one appointment file");
+            }
+            int offset = (int) length;
+            out.writeShort(value == null ? NULL_STRING : bytes.length);
+            out.write(bytes);
+            length += 2 + bytes.length;
+            return offset;
+        }
+
+        void flush() throws IOException {
+            out.flush();
+        }
+    }
+}
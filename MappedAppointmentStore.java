@@ -0,0 +1,157 @@
+package aaa;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+// 以 MappedAppointmentFile 为基础的存储引擎：文件中的预约不读入内存，访问时才从映射的文件生成 Appointment 视图
+// 之后的修改保存在堆上：新增的预约放在 added 中，取消的文件行记在 removed 中，改过名的文件行记在 renamed 中
+// 文件本身不会被修改，需要保存时用 MappedAppointmentFile.write 重新写出
+class MappedAppointmentStore implements AppointmentStore {
+    private final MappedAppointmentFile file;
+    private final LinkedHashMap<String, Appointment> added = new LinkedHashMap<>();
+    private final BitSet removed = new BitSet();
+    private final HashMap<Integer, String> renamed = new HashMap<>();
+    private int removedCount;
+    private AppointmentListener renameListener;
+
+    public MappedAppointmentStore(MappedAppointmentFile file) {
+        this.file = file;
+    }
+
+    public MappedAppointmentFile getFile() {
+        return file;
+    }
+
+    // 文件中的医生，新预约应使用它返回的对象
+    public HealthProfessional getProfessional(int id) {
+        return file.getProfessional(id);
+    }
+
+    @Override
+    public boolean contains(String mobile) {
+        return added.containsKey(mobile) || findRow(mobile) >= 0;
+    }
+
+    @Override
+    public Appointment get(String mobile) {
+        Appointment appointment = added.get(mobile);
+        if (appointment != null) {
+            return appointment;
+        }
+        int row = findRow(mobile);
+        return row < 0 ? null : view(row);
+    }
+
+    @Override
+    public void put(Appointment appointment) {
+        added.put(appointment.getMobile(), appointment);
+        appointment.setListener(renameListener);
+    }
+
+    @Override
+    public Appointment remove(String mobile) {
+        Appointment appointment = added.remove(mobile);
+        if (appointment == null) {
+            int row = findRow(mobile);
+            if (row < 0) {
+                return null;
+            }
+            appointment = view(row);
+            removed.set(row);
+            renamed.remove(row);
+            removedCount++;
+        }
+        appointment.setListener(null);
+        return appointment;
+    }
+
+    @Override
+    public int size() {
+        return file.getAppointmentCount() - removedCount + added.size();
+    }
+
+    // 新增的预约放在 LinkedHashMap 中，不需要预先分配
+    @Override
+    public void ensureCapacity(int additional) {
+    }
+
+    @Override
+    public boolean updatePatientName(Appointment appointment) {
+        if (added.get(appointment.getMobile()) == appointment) {
+            return true;
+        }
+        int row = findRow(appointment.getMobile());
+        if (row < 0) {
+            return false;
+        }
+        renamed.put(row, appointment.getPatientName());
+        return true;
+    }
+
+    @Override
+    public void setRenameListener(AppointmentListener listener) {
+        this.renameListener = listener;
+    }
+
+    // 没有修改过时直接使用文件中保存的时间表，不遍历预约
+    @Override
+    public void loadSchedules(Map<Integer, ProfessionalSchedule> schedules) {
+        if (removedCount == 0 && added.isEmpty()) {
+            file.loadSchedules(schedules);
+        } else {
+            AppointmentStore.super.loadSchedules(schedules);
+        }
+    }
+
+    // 先按文件中的顺序遍历文件中的预约，再按添加顺序遍历新增的预约
+    @Override
+    public Iterator<Appointment> iterator() {
+        Iterator<Appointment> addedIterator = added.values().iterator();
+        return new Iterator<Appointment>() {
+            private int row = removed.nextClearBit(0);
+
+            @Override
+            public boolean hasNext() {
+                return row < file.getAppointmentCount() || addedIterator.hasNext();
+            }
+
+            @Override
+            public Appointment next() {
+                if (row < file.getAppointmentCount()) {
+                    Appointment appointment = view(row);
+                    row = removed.nextClearBit(row + 1);
+                    return appointment;
+                }
+                if (!addedIterator.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return addedIterator.next();
+            }
+        };
+    }
+
+    // 文件中未被取消的行，没有时返回 -1
+    private int findRow(String mobile) {
+        long key = ColumnarAppointmentStore.encodeMobileOrZero(mobile);
+        if (key == 0) {
+            return -1;
+        }
+        int row = file.findRow(key);
+        return row < 0 || removed.get(row) ? -1 : row;
+    }
+
+    private Appointment view(int row) {
+        Appointment appointment = file.appointmentAt(row);
+        String name = renamed.get(row);
+        if (name != null) {
+            appointment = new Appointment(name, appointment.getMobile(), appointment.getTimeSlot(),
+                    appointment.getHealthProfessional());
+        }
+        appointment.setListener(renameListener);
+        return appointment;
+    }
+}
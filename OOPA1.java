@@ -1,6 +1,11 @@
 package aaa;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.IntPredicate;
 
 // 基类
 class HealthProfessional {
@@ -15,12 +20,37 @@ class HealthProfessional {
         this.specialization = specialization;
     }
 
+    public int getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getSpecialization() {
+        return specialization;
+    }
+
     public void printDetails() {
-        System.out.println("ID: " + id + ", Name: " + name + ", Specialization: " + specialization);
+        AppointmentReportWriter.print(this::appendDetails);
+    }
+
+    // 把详细信息写入 out，格式与 printDetails 相同
+    public void appendDetails(Appendable out) throws IOException {
+        out.append("ID: ").append(Integer.toString(id))
+                .append(", Name: ").append(name)
+                .append(", Specialization: ").append(specialization)
+                .append(AppointmentReportWriter.NEWLINE);
+    }
+
+    // 医生类别，printProfessionalType 打印的就是它，也用于按类别统计预约
+    public String getProfessionalType() {
+        return "Health Professional";
     }
 
     public void printProfessionalType() {
-        System.out.println("Health Professional");
+        System.out.println(getProfessionalType());
     }
 }
 
@@ -33,15 +63,19 @@ class GeneralPractitioner extends HealthProfessional {
         this.gpType = gpType;
     }
 
+    public String getGpType() {
+        return gpType;
+    }
+
     @Override
-    public void printDetails() {
-        super.printDetails();
-        System.out.println("Type: " + gpType);
+    public void appendDetails(Appendable out) throws IOException {
+        super.appendDetails(out);
+        out.append("Type: ").append(gpType).append(AppointmentReportWriter.NEWLINE);
     }
 
     @Override
-    public void printProfessionalType() {
-        System.out.println("General Practitioner");
+    public String getProfessionalType() {
+        return "General Practitioner";
     }
 }
 
@@ -54,38 +88,83 @@ class Specialist extends HealthProfessional {
         this.specialty = specialty;
     }
 
+    public String getSpecialty() {
+        return specialty;
+    }
+
     @Override
-    public void printDetails() {
-        super.printDetails();
-        System.out.println("Specialty: " + specialty);
+    public void appendDetails(Appendable out) throws IOException {
+        super.appendDetails(out);
+        out.append("Specialty: ").append(specialty).append(AppointmentReportWriter.NEWLINE);
     }
 
     @Override
-    public void printProfessionalType() {
-        System.out.println("Specialist");
+    public String getProfessionalType() {
+        return "Specialist";
     }
 }
 
 // Appointment 类，用于存储预约信息
 class Appointment {
+    // 每个预约占用的时长（分钟）
+    public static final int SLOT_MINUTES = 30;
+
     private String patientName;
     private final String mobile;
     private final String timeSlot;
+    private final int slotMinute;
     private final HealthProfessional healthProfessional;
+    // 预约加入 AppointmentManager 后，改名时通知管理器
+    private AppointmentListener listener;
 
     public Appointment(String patientName, String mobile, String timeSlot, HealthProfessional healthProfessional) {
         this.patientName = patientName;
         this.mobile = mobile;
         this.timeSlot = timeSlot;
+        this.slotMinute = parseTimeSlot(timeSlot);
         this.healthProfessional = healthProfessional;
     }
 
+    // 将 "HH:mm" 解析为当天的分钟数，只在创建预约时解析一次
+    public static int parseTimeSlot(String timeSlot) {
+        if (timeSlot == null || timeSlot.length() != 5 || timeSlot.charAt(2) != ':') {
+            throw new IllegalArgumentException("Invalid time slot: " + timeSlot);
+        }
+        int hour = digit(timeSlot, 0) * 10 + digit(timeSlot, 1);
+        int minute = digit(timeSlot, 3) * 10 + digit(timeSlot, 4);
+        if (hour > 23 || minute > 59) {
+            throw new IllegalArgumentException("Invalid time slot: " + timeSlot);
+        }
+        return hour * 60 + minute;
+    }
+
+    // 将当天的分钟数格式化为 "HH:mm"
+    public static String formatTimeSlot(int minute) {
+        return new String(new char[] {
+                (char) ('0' + minute / 600), (char) ('0' + minute / 60 % 10), ':',
+                (char) ('0' + minute % 60 / 10), (char) ('0' + minute % 10)});
+    }
+
+    private static int digit(String timeSlot, int index) {
+        char c = timeSlot.charAt(index);
+        if (c < '0' || c > '9') {
+            throw new IllegalArgumentException("Invalid time slot: " + timeSlot);
+        }
+        return c - '0';
+    }
+
     public void printDetails() {
-        System.out.println("Patient Name: " + patientName);
-        System.out.println("Mobile: " + mobile);
-        System.out.println("Time Slot: " + timeSlot);
-        healthProfessional.printDetails();
-        System.out.println("------------------------------");
+        AppointmentReportWriter.print(this::appendDetails);
+    }
+
+    // 把预约详情写入 out，格式与 printDetails 相同
+    public void appendDetails(Appendable out) throws IOException {
+        String newline = AppointmentReportWriter.NEWLINE;
+        out.append("Patient Name: ").append(patientName).append(newline)
+                .append("Mobile: ").append(mobile).append(newline)
+                .append("Time Slot: ").append(timeSlot).append(newline);
+        healthProfessional.appendDetails(out);
+        out.append("------------------------------").append(newline);
     }
 
     public String getMobile() {
@@ -96,58 +175,504 @@ class Appointment {
         return patientName;
     }
 
+    public String getTimeSlot() {
+        return timeSlot;
+    }
+
+    public int getSlotMinute() {
+        return slotMinute;
+    }
+
+    public HealthProfessional getHealthProfessional() {
+        return healthProfessional;
+    }
+
     public void setPatientName(String patientName) {
+        String oldName = this.patientName;
+        this.patientName = patientName;
+        if (listener != null) {
+            listener.patientRenamed(this, oldName);
+        }
+    }
+
+    void setListener(AppointmentListener listener) {
+        this.listener = listener;
+    }
+
+    // 恢复数据时使用：改名但不通知监听器
+    void restorePatientName(String patientName) {
         this.patientName = patientName;
     }
 }
 
 // AppointmentManager 类，用于管理所有预约
 class AppointmentManager {
-    private final ArrayList<Appointment> appointments;
+    // 添加预约的结果
+    private enum BookingStatus { BOOKED, DUPLICATE_MOBILE, SLOT_TAKEN }
+
+    // 以手机号为键保存预约的存储引擎
+    private final AppointmentStore appointments;
+    // 每个医生一天的时间表，键为医生 id
+    private final HashMap<Integer, ProfessionalSchedule> schedules;
+    private final ArrayList<AppointmentListener> listeners;
+    // 已满时段的候补名单，取消预约时按优先级转为正式预约
+    private final Waitlist waitlist = new Waitlist();
+    private AppointmentMetrics metrics = AppointmentMetrics.NONE;
+    // 是否在添加和取消预约时向控制台打印结果
+    private boolean verbose = true;
+    // 可选的手机号过滤器，为 null 时每次都访问存储
+    private CountingBloomFilter mobileFilter;
+    private double mobileFilterRate;
+    // enableNameIndex 之后才有
+    private PatientNameIndex nameIndex;
+    // enableSnapshots 之后才有，snapshot() 可以在其他线程中调用
+    private volatile AppointmentVersions versions;
+    // 改名后先更新存储，再转发给监听器
+    private final AppointmentListener renameDispatcher = new AppointmentListener() {
+        @Override
+        public void patientRenamed(Appointment appointment, String oldName) {
+            if (!appointments.updatePatientName(appointment)) {
+                return;
+            }
+            for (AppointmentListener listener : listeners) {
+                listener.patientRenamed(appointment, oldName);
+            }
+        }
+    };
 
     public AppointmentManager() {
-        appointments = new ArrayList<>();
+        this(new HeapAppointmentStore());
+    }
+
+    // 使用指定的存储引擎，例如 ColumnarAppointmentStore；存储中已有的预约（例如 MappedAppointmentStore 打开的文件）会保留
+    public AppointmentManager(AppointmentStore store) {
+        appointments = store;
+        schedules = new HashMap<>();
+        listeners = new ArrayList<>();
+        store.setRenameListener(renameDispatcher);
+        if (store.size() > 0) {
+            store.loadSchedules(schedules);
+        }
+    }
+
+    public void addListener(AppointmentListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(AppointmentListener listener) {
+        listeners.remove(listener);
+    }
+
+    // 服务器等场景下关闭控制台输出，结果只通过返回值报告
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    // 设置操作耗时的统计，传入 AppointmentMetrics.NONE 关闭统计
+    public void setMetrics(AppointmentMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    // 开启病人姓名索引，findAppointmentsByName 不再遍历所有预约；应在恢复数据之后调用
+    public void enableNameIndex() {
+        if (nameIndex == null) {
+            nameIndex = new PatientNameIndex(appointments);
+            listeners.add(nameIndex);
+        }
+    }
+
+    // 姓名以 prefix 开头（不区分大小写）的预约，最多 limit 个
+    // 开启姓名索引时按姓名排序，O(log n + limit)；否则按预约顺序遍历所有预约
+    public List<Appointment> findAppointmentsByName(String prefix, int limit) {
+        if (nameIndex != null) {
+            return nameIndex.findByPrefix(prefix, limit);
+        }
+        ArrayList<Appointment> result = new ArrayList<>();
+        for (Appointment appointment : appointments) {
+            if (result.size() >= limit) {
+                break;
+            }
+            if (PatientNameIndex.matches(appointment.getPatientName(), prefix)) {
+                result.add(appointment);
+            }
+        }
+        return result;
+    }
+
+    // 开启快照：之后可以在任何线程中用 snapshot() 获取某一时刻的只读视图，写操作照常进行
+    // 应在恢复数据之后调用，restore 和 discard 不会产生新版本
+    public void enableSnapshots() {
+        if (versions == null) {
+            AppointmentVersions created = new AppointmentVersions(appointments);
+            listeners.add(created);
+            versions = created;
+        }
+    }
+
+    // 当前所有预约的一致视图，O(1)；遍历视图时不会看到之后的修改，用完后应关闭
+    public AppointmentSnapshot snapshot() {
+        AppointmentVersions current = versions;
+        if (current == null) {
+            throw new IllegalStateException("Snapshots are not enabled");
+        }
+        return current.snapshot();
+    }
+
+    // 开启手机号过滤器：大部分不存在的手机号在取消和查询时直接返回，不访问存储
+    // 预约数超过 expectedSize 后按两倍容量重建，误判率保持在 falsePositiveRate 左右
+    public void enableMobileFilter(int expectedSize, double falsePositiveRate) {
+        mobileFilterRate = falsePositiveRate;
+        rebuildMobileFilter(Math.max(expectedSize, appointments.size()));
+    }
+
+    public void disableMobileFilter() {
+        mobileFilter = null;
+    }
+
+    // 按存储中的预约重新建立过滤器，顺便清除饱和的计数器
+    public void rebuildMobileFilter() {
+        if (mobileFilter != null) {
+            rebuildMobileFilter(Math.max(mobileFilter.getCapacity(), appointments.size()));
+        }
+    }
+
+    private void rebuildMobileFilter(int capacity) {
+        CountingBloomFilter filter = new CountingBloomFilter(Math.max(1, capacity), mobileFilterRate);
+        for (Appointment appointment : appointments) {
+            filter.add(appointment.getMobile());
+        }
+        mobileFilter = filter;
     }
 
-    public void addAppointment(Appointment appointment) {
-        appointments.add(appointment);
-        System.out.println("Appointment added for " + appointment.getPatientName());
+    // 过滤器判断手机号一定没有预约时返回 false
+    private boolean mightHaveAppointment(String mobile) {
+        return mobileFilter == null || mobileFilter.mightContain(mobile);
+    }
+
+    // 添加预约，同一手机号只能有一个预约，同一医生的时段不能重叠
+    public boolean addAppointment(Appointment appointment) {
+        String failure = bookAppointment(appointment);
+        if (verbose) {
+            System.out.println(failure == null ? describe(BookingStatus.BOOKED, appointment) : failure);
+        }
+        return failure == null;
+    }
+
+    // 与 addAppointment 相同，但不打印，而是返回失败的原因（与 BatchResult 中的相同），成功时返回 null
+    public String bookAppointment(Appointment appointment) {
+        if (metrics == AppointmentMetrics.NONE) {
+            return add(appointment);
+        }
+        long start = System.nanoTime();
+        String failure = add(appointment);
+        metrics.recordAdd(System.nanoTime() - start, failure == null);
+        return failure;
+    }
+
+    private String add(Appointment appointment) {
+        BookingStatus status;
+        try {
+            status = insert(appointment);
+        } catch (IllegalArgumentException e) {
+            // 存储引擎不能保存这个预约（例如列式存储中非数字的手机号），与批量添加一样报告原因
+            return e.getMessage();
+        }
+        if (status != BookingStatus.BOOKED) {
+            return describe(status, appointment);
+        }
+        for (AppointmentListener listener : listeners) {
+            listener.appointmentAdded(appointment);
+        }
+        return null;
+    }
+
+    // 批量添加预约：逐行校验（手机号重复、时段冲突，包括批内预约之间的冲突）并直接写入，
+    // 全部通过时整批生效；只要有一行失败就撤销本批已写入的预约，并在结果中列出每一行的失败原因
+    // 不为每个预约打印信息
+    public BatchResult addAppointments(Collection<Appointment> batch) {
+        BatchResult result = new BatchResult();
+        appointments.ensureCapacity(batch.size());
+        ArrayList<Appointment> applied = new ArrayList<>(batch.size());
+        int row = 0;
+        for (Appointment appointment : batch) {
+            String failure;
+            try {
+                BookingStatus status = insert(appointment);
+                failure = status == BookingStatus.BOOKED ? null : describe(status, appointment);
+            } catch (IllegalArgumentException e) {
+                failure = e.getMessage();
+            }
+            if (failure == null) {
+                applied.add(appointment);
+            } else {
+                result.addFailure(row, failure);
+            }
+            row++;
+        }
+        if (!result.isCommitted()) {
+            for (Appointment appointment : applied) {
+                remove(appointment.getMobile());
+            }
+            if (verbose) {
+                System.out.println("Batch rejected: " + result.getFailures().size() + " of " + batch.size()
+                        + " appointments are invalid");
+            }
+            return result;
+        }
+        result.setBookedCount(applied.size());
+        for (Appointment appointment : applied) {
+            for (AppointmentListener listener : listeners) {
+                listener.appointmentAdded(appointment);
+            }
+        }
+        if (verbose) {
+            System.out.println("Batch of " + applied.size() + " appointments added");
+        }
+        return result;
+    }
+
+    // 加入候补名单：等与 appointment 的时段重叠的预约被取消、时段空出后自动转为正式预约
+    // urgency 越大越优先，相同时先加入的优先；手机号已有预约或已在候补名单中时返回 false
+    // 时段现在就空闲时也返回 false，应直接预约：只有取消才会触发转正，这样的候补会一直等待
+    public boolean addToWaitlist(Appointment appointment, int urgency) {
+        try {
+            // 候补转正时不能再失败
+            appointments.validate(appointment);
+        } catch (IllegalArgumentException e) {
+            if (verbose) {
+                System.out.println(e.getMessage());
+            }
+            return false;
+        }
+        if (isFree(appointment.getHealthProfessional().getId(), appointment.getSlotMinute())) {
+            if (verbose) {
+                System.out.println("Time slot " + appointment.getTimeSlot() + " is available for "
+                        + appointment.getHealthProfessional().getName() + "; book it instead of waiting");
+            }
+            return false;
+        }
+        boolean added = !(mightHaveAppointment(appointment.getMobile()) && appointments.contains(appointment.getMobile()))
+                && waitlist.add(appointment, urgency);
+        if (verbose) {
+            System.out.println(added
+                    ? "Added " + appointment.getPatientName() + " to the waitlist for "
+                            + appointment.getHealthProfessional().getName() + " at " + appointment.getTimeSlot()
+                    : "Cannot add mobile " + appointment.getMobile() + " to the waitlist");
+        }
+        return added;
+    }
+
+    // 退出候补名单，不在名单中时返回 false
+    public boolean leaveWaitlist(String mobile) {
+        return waitlist.remove(mobile) != null;
+    }
+
+    public int getWaitlistSize() {
+        return waitlist.size();
+    }
+
+    // 迁移数据时使用：把 professionalIds 中医生的候补移到 target，不打印；返回移走的手机号
+    List<String> moveWaitlist(AppointmentManager target, IntPredicate professionalIds) {
+        return waitlist.moveTo(target.waitlist, professionalIds);
+    }
+
+    // 按手机号查找预约，O(1)
+    public Appointment findAppointment(String mobile) {
+        return mightHaveAppointment(mobile) ? appointments.get(mobile) : null;
+    }
+
+    public int size() {
+        return appointments.size();
+    }
+
+    // 有预约的医生数量，即时间表索引的大小
+    public int getScheduleCount() {
+        return schedules.size();
+    }
+
+    // 按预约顺序遍历所有预约，只读
+    public Iterable<Appointment> getAppointments() {
+        return appointments;
+    }
+
+    // 查询医生在某个时段是否空闲，O(1)
+    public boolean isAvailable(HealthProfessional professional, String timeSlot) {
+        return isFree(professional.getId(), Appointment.parseTimeSlot(timeSlot));
+    }
+
+    private boolean isFree(int professionalId, int start) {
+        ProfessionalSchedule schedule = schedules.get(professionalId);
+        return schedule == null || schedule.isFree(start);
+    }
+
+    // 在 [from, to] 内为每个候选医生找到最早的空闲开始时间，按时间先后返回最多 limit 个
+    // 每个医生只需在自己的时间表位图上查找，不遍历预约
+    public List<AvailableSlot> findEarliestSlots(Iterable<HealthProfessional> candidates, String from, String to,
+                                                 int limit) {
+        int start = Appointment.parseTimeSlot(from);
+        int end = Appointment.parseTimeSlot(to);
+        ArrayList<AvailableSlot> slots = new ArrayList<>();
+        if (start > end || limit <= 0) {
+            return slots;
+        }
+        for (HealthProfessional professional : candidates) {
+            ProfessionalSchedule schedule = schedules.get(professional.getId());
+            int minute = schedule == null ? start : schedule.nextFree(start, end);
+            if (minute >= 0) {
+                slots.add(new AvailableSlot(professional, minute));
+            }
+        }
+        slots.sort(AvailableSlot.EARLIEST_FIRST);
+        return slots.size() > limit ? new ArrayList<>(slots.subList(0, limit)) : slots;
     }
 
     public void printExistingAppointments() {
-        if (appointments.isEmpty()) {
+        if (appointments.size() == 0) {
             System.out.println("No existing appointments.");
             return;
         }
-        for (Appointment appointment : appointments) {
-            appointment.printDetails();
+        AppointmentReportWriter.printAll(appointments);
+    }
+
+    // 取消预约，通过索引直接删除，O(1)；开启手机号过滤器时，大部分不存在的手机号不会访问存储
+    // 该时段有候补时，优先级最高的候补在同一次调用中转为正式预约，O(log n)
+    public boolean cancelAppointment(String mobile) {
+        if (metrics == AppointmentMetrics.NONE) {
+            return cancel(mobile);
         }
+        long start = System.nanoTime();
+        boolean found = cancel(mobile);
+        metrics.recordCancel(System.nanoTime() - start, found);
+        return found;
     }
 
-    // 取消预约
-    public void cancelAppointment(String mobile) {
-        boolean found = false;
-        for (int i = 0; i < appointments.size(); i++) {
-            if (appointments.get(i).getMobile().equals(mobile)) {
-                appointments.remove(i);
-                System.out.println("Appointment canceled for mobile: " + mobile);
-                found = true;
-                break;
+    private boolean cancel(String mobile) {
+        Appointment appointment = remove(mobile);
+        if (appointment == null) {
+            if (verbose) {
+                System.out.println("No appointment found for mobile: " + mobile);
+            }
+            return false;
+        }
+        // 在同一次调用中转正候补，空出的时段不会被其他预约抢走
+        List<Appointment> promoted = promote(appointment);
+        if (verbose) {
+            System.out.println("Appointment canceled for mobile: " + mobile);
+            for (Appointment added : promoted) {
+                System.out.println("Appointment added for " + added.getPatientName() + " from the waitlist");
+            }
+        }
+        for (AppointmentListener listener : listeners) {
+            listener.appointmentCanceled(appointment);
+            for (Appointment added : promoted) {
+                listener.appointmentAdded(added);
+            }
+        }
+        return true;
+    }
+
+    // 把取消空出的时间交给候补，返回转正的预约
+    // 时段与空出的时间重叠、现在已经空闲的候补中，每次取优先级最高的一个，直到没有可以转正的候补；
+    // 开始时间不同的候补可以先后占用空出的时间；候补的手机号已经另有预约时丢弃这条候补
+    private List<Appointment> promote(Appointment canceled) {
+        int professionalId = canceled.getHealthProfessional().getId();
+        int start = canceled.getSlotMinute();
+        List<Appointment> promoted = new ArrayList<>(1);
+        Appointment candidate;
+        while ((candidate = waitlist.peek(professionalId, start - Appointment.SLOT_MINUTES + 1,
+                start + Appointment.SLOT_MINUTES - 1, minute -> isFree(professionalId, minute))) != null) {
+            waitlist.remove(candidate.getMobile());
+            if (insert(candidate) == BookingStatus.BOOKED) {
+                promoted.add(candidate);
             }
         }
-        if (!found) {
-            System.out.println("No appointment found for mobile: " + mobile);
+        return promoted;
+    }
+
+    // 恢复数据时使用：不打印，也不通知监听器；存储引擎不能保存时抛出 IllegalArgumentException
+    boolean restore(Appointment appointment) {
+        return insert(appointment) == BookingStatus.BOOKED;
+    }
+
+    // 恢复数据时使用：不打印，也不通知监听器
+    Appointment discard(String mobile) {
+        return remove(mobile);
+    }
+
+    // 恢复数据时使用：改名，不通知监听器；没有这个预约时返回 false
+    boolean restoreName(String mobile, String patientName) {
+        Appointment appointment = findAppointment(mobile);
+        if (appointment == null) {
+            return false;
+        }
+        appointment.restorePatientName(patientName);
+        return appointments.updatePatientName(appointment);
+    }
+
+    private static String describe(BookingStatus status, Appointment appointment) {
+        switch (status) {
+            case DUPLICATE_MOBILE:
+                return "Appointment already exists for mobile: " + appointment.getMobile();
+            case SLOT_TAKEN:
+                return "Time slot " + appointment.getTimeSlot() + " is not available for "
+                        + appointment.getHealthProfessional().getName();
+            default:
+                return "Appointment added for " + appointment.getPatientName();
+        }
+    }
+
+    // 存储引擎不能保存 appointment 时抛出 IllegalArgumentException，这时时间表和存储都没有改变
+    private BookingStatus insert(Appointment appointment) {
+        if (mightHaveAppointment(appointment.getMobile()) && appointments.contains(appointment.getMobile())) {
+            return BookingStatus.DUPLICATE_MOBILE;
+        }
+        appointments.validate(appointment);
+        ProfessionalSchedule schedule =
+                schedules.computeIfAbsent(appointment.getHealthProfessional().getId(), id -> new ProfessionalSchedule());
+        if (!schedule.isFree(appointment.getSlotMinute())) {
+            return BookingStatus.SLOT_TAKEN;
+        }
+        appointments.put(appointment);
+        schedule.occupy(appointment.getSlotMinute());
+        if (mobileFilter != null) {
+            if (appointments.size() > mobileFilter.getCapacity()) {
+                rebuildMobileFilter(mobileFilter.getCapacity() * 2);
+            } else {
+                mobileFilter.add(appointment.getMobile());
+            }
+        }
+        return BookingStatus.BOOKED;
+    }
+
+    private Appointment remove(String mobile) {
+        if (!mightHaveAppointment(mobile)) {
+            return null;
+        }
+        Appointment appointment = appointments.remove(mobile);
+        if (appointment == null) {
+            return null;
+        }
+        if (mobileFilter != null) {
+            mobileFilter.remove(mobile);
+        }
+        int professionalId = appointment.getHealthProfessional().getId();
+        ProfessionalSchedule schedule = schedules.get(professionalId);
+        schedule.release(appointment.getSlotMinute());
+        if (schedule.isEmpty()) {
+            schedules.remove(professionalId);
         }
+        return appointment;
     }
 }
 
 // 主类 OOPA1，用于测试
 public class OOPA1 {
     public static void main(String[] args) {
-        HealthProfessional gp1 = new GeneralPractitioner(1, "Dr. John", "General Medicine", "Primary Care");
-        HealthProfessional gp2 = new GeneralPractitioner(2, "Dr. Smith", "Family Medicine", "Primary Care");
-        HealthProfessional sp1 = new Specialist(3, "Dr. Brown", "Cardiology", "Cardiologist");
-        HealthProfessional sp2 = new Specialist(4, "Dr. Green", "Dermatology", "Dermatologist");
+        ProfessionalRegistry registry = new ProfessionalRegistry();
+        HealthProfessional gp1 = registry.generalPractitioner(1, "Dr. John", "General Medicine", "Primary Care");
+        HealthProfessional gp2 = registry.generalPractitioner(2, "Dr. Smith", "Family Medicine", "Primary Care");
+        HealthProfessional sp1 = registry.specialist(3, "Dr. Brown", "Cardiology", "Cardiologist");
+        HealthProfessional sp2 = registry.specialist(4, "Dr. Green", "Dermatology", "Dermatologist");
 
         System.out.println("Health Professionals:");
         gp1.printProfessionalType();
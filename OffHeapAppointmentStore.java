@@ -0,0 +1,357 @@
+package aaa;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.IntFunction;
+
+// 堆外存储引擎：预约和姓名都保存在直接缓冲区（ByteBuffer.allocateDirect）中，堆上只有每块一个缓冲区对象，
+// 预约数量增加时堆的占用和 GC 的工作量基本不变
+//   记录区    每个预约 RECORD_BYTES 字节：手机号编码（0 表示空行）、姓名的位置、当天的分钟数、医生 id，
+//             按 CHUNK_ROWS 行分块分配，扩容时只增加新块，不复制旧数据
+//   空闲链表  取消预约后空出的行用 slot 字段串成链表，添加预约时先使用这些行
+//   姓名区    每个姓名为 2 字节长度 + UTF-8 字节，按 ARENA_CHUNK_BYTES 分块；取消和改名留下的空间
+//             超过一半时整理
+//   索引      开放寻址哈希表（保存 行号 + 1）也在堆外
+// 行会被重复使用，所以遍历顺序是行号顺序，不一定是添加顺序
+// 直接缓冲区在存储不再被引用后由 GC 释放，总量受 -XX:MaxDirectMemorySize 限制
+class OffHeapAppointmentStore implements AppointmentStore {
+    private static final int RECORD_BYTES = 24;
+    private static final int CHUNK_ROWS = 1 << 16;
+    private static final int ARENA_CHUNK_BITS = 20;
+    private static final int ARENA_CHUNK_BYTES = 1 << ARENA_CHUNK_BITS;
+    private static final int NULL_NAME = 0xFFFF;
+    private static final int NO_ROW = -1;
+
+    private final IntFunction<HealthProfessional> professionals;
+    private AppointmentListener renameListener;
+
+    private final ArrayList<ByteBuffer> records = new ArrayList<>();
+    private int rows;           // 已使用过的行数，包括空闲链表中的行
+    private int size;
+    private int freeHead = NO_ROW;
+
+    private ArrayList<ByteBuffer> arena = new ArrayList<>();
+    private int arenaPosition = ARENA_CHUNK_BYTES;  // 当前块中下一个姓名的位置，为 ARENA_CHUNK_BYTES 时需要新块
+    private long arenaUsed;
+    private long arenaGarbage;
+
+    private ByteBuffer index;
+    private int indexMask;
+
+    public OffHeapAppointmentStore(IntFunction<HealthProfessional> professionals) {
+        this(professionals, 1024);
+    }
+
+    public OffHeapAppointmentStore(IntFunction<HealthProfessional> professionals, int initialCapacity) {
+        this.professionals = professionals;
+        allocateIndex(tableSize(Math.max(initialCapacity, 16)));
+    }
+
+    @Override
+    public boolean contains(String mobile) {
+        long key = ColumnarAppointmentStore.encodeMobileOrZero(mobile);
+        return key != 0 && find(key) >= 0;
+    }
+
+    @Override
+    public Appointment get(String mobile) {
+        long key = ColumnarAppointmentStore.encodeMobileOrZero(mobile);
+        if (key == 0) {
+            return null;
+        }
+        int row = find(key);
+        return row < 0 ? null : view(row);
+    }
+
+    @Override
+    public void validate(Appointment appointment) {
+        int professionalId = appointment.getHealthProfessional().getId();
+        if (professionals.apply(professionalId) == null) {
+            throw new IllegalArgumentException("Unknown health professional id: " + professionalId);
+        }
+        ColumnarAppointmentStore.encodeMobile(appointment.getMobile());
+    }
+
+    @Override
+    public void put(Appointment appointment) {
+        validate(appointment);
+        long key = ColumnarAppointmentStore.encodeMobile(appointment.getMobile());
+        long name = appendName(appointment.getPatientName());
+        if (size + 1 > (indexMask + 1) / 4 * 3) {
+            allocateIndex((indexMask + 1) * 2);
+            rebuildIndex();
+        }
+        int row;
+        if (freeHead != NO_ROW) {
+            row = freeHead;
+            freeHead = chunk(row).getInt(offset(row) + 16);
+        } else {
+            if (rows == records.size() * CHUNK_ROWS) {
+                records.add(ByteBuffer.allocateDirect(CHUNK_ROWS * RECORD_BYTES));
+            }
+            row = rows++;
+        }
+        ByteBuffer chunk = chunk(row);
+        int offset = offset(row);
+        chunk.putLong(offset, key);
+        chunk.putLong(offset + 8, name);
+        chunk.putInt(offset + 16, appointment.getSlotMinute());
+        chunk.putInt(offset + 20, appointment.getHealthProfessional().getId());
+        insertIndex(key, row);
+        size++;
+        appointment.setListener(renameListener);
+    }
+
+    // 取消的行放入空闲链表，姓名占用的空间在整理姓名区时回收
+    @Override
+    public Appointment remove(String mobile) {
+        long key = ColumnarAppointmentStore.encodeMobileOrZero(mobile);
+        if (key == 0) {
+            return null;
+        }
+        int row = find(key);
+        if (row < 0) {
+            return null;
+        }
+        Appointment appointment = view(row);
+        appointment.setListener(null);
+        removeIndex(key);
+        ByteBuffer chunk = chunk(row);
+        int offset = offset(row);
+        releaseName(chunk.getLong(offset + 8));
+        chunk.putLong(offset, 0);
+        chunk.putInt(offset + 16, freeHead);
+        freeHead = row;
+        size--;
+        return appointment;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    // 记录区按块增长，只需要预先扩大索引
+    @Override
+    public void ensureCapacity(int additional) {
+        int needed = tableSize(size + additional);
+        if (needed > indexMask + 1) {
+            allocateIndex(needed);
+            rebuildIndex();
+        }
+    }
+
+    @Override
+    public boolean updatePatientName(Appointment appointment) {
+        long key = ColumnarAppointmentStore.encodeMobileOrZero(appointment.getMobile());
+        int row = key == 0 ? -1 : find(key);
+        if (row < 0) {
+            return false;
+        }
+        long name = appendName(appointment.getPatientName());
+        ByteBuffer chunk = chunk(row);
+        int offset = offset(row);
+        releaseName(chunk.getLong(offset + 8));
+        chunk.putLong(offset + 8, name);
+        return true;
+    }
+
+    @Override
+    public void setRenameListener(AppointmentListener listener) {
+        this.renameListener = listener;
+    }
+
+    // 按行号顺序遍历，跳过空行
+    @Override
+    public Iterator<Appointment> iterator() {
+        return new Iterator<Appointment>() {
+            private int row = nextRow(0);
+
+            @Override
+            public boolean hasNext() {
+                return row < rows;
+            }
+
+            @Override
+            public Appointment next() {
+                if (row >= rows) {
+                    throw new NoSuchElementException();
+                }
+                Appointment appointment = view(row);
+                row = nextRow(row + 1);
+                return appointment;
+            }
+        };
+    }
+
+    // 占用的堆外内存（字节）
+    public long memoryFootprint() {
+        return (long) records.size() * CHUNK_ROWS * RECORD_BYTES + (long) arena.size() * ARENA_CHUNK_BYTES
+                + index.capacity();
+    }
+
+    private int nextRow(int row) {
+        while (row < rows && chunk(row).getLong(offset(row)) == 0) {
+            row++;
+        }
+        return row;
+    }
+
+    private ByteBuffer chunk(int row) {
+        return records.get(row / CHUNK_ROWS);
+    }
+
+    private static int offset(int row) {
+        return (row % CHUNK_ROWS) * RECORD_BYTES;
+    }
+
+    private Appointment view(int row) {
+        ByteBuffer chunk = chunk(row);
+        int offset = offset(row);
+        Appointment appointment = new Appointment(readName(chunk.getLong(offset + 8)),
+                ColumnarAppointmentStore.decodeMobile(chunk.getLong(offset)),
+                Appointment.formatTimeSlot(chunk.getInt(offset + 16)), professionals.apply(chunk.getInt(offset + 20)));
+        appointment.setListener(renameListener);
+        return appointment;
+    }
+
+    // 姓名的位置为 块号 << ARENA_CHUNK_BITS | 块内位置，姓名不跨块
+    private long appendName(String name) {
+        byte[] bytes = name == null ? new byte[0] : name.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length >= NULL_NAME) {
+            throw new IllegalArgumentException("Patient name too long: " + bytes.length + " bytes");
+        }
+        int needed = 2 + bytes.length;
+        if (arenaGarbage > ARENA_CHUNK_BYTES && arenaGarbage > arenaUsed / 2) {
+            compactArena();
+        }
+        if (arenaPosition + needed > ARENA_CHUNK_BYTES) {
+            arena.add(ByteBuffer.allocateDirect(ARENA_CHUNK_BYTES));
+            arenaPosition = 0;
+        }
+        ByteBuffer chunk = arena.get(arena.size() - 1);
+        int position = arenaPosition;
+        chunk.putShort(position, (short) (name == null ? NULL_NAME : bytes.length));
+        chunk.put(position + 2, bytes);
+        arenaPosition += needed;
+        arenaUsed += needed;
+        return (long) (arena.size() - 1) << ARENA_CHUNK_BITS | position;
+    }
+
+    private String readName(long name) {
+        ByteBuffer chunk = arena.get((int) (name >>> ARENA_CHUNK_BITS));
+        int position = (int) name & (ARENA_CHUNK_BYTES - 1);
+        int length = chunk.getShort(position) & 0xFFFF;
+        if (length == NULL_NAME) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        chunk.get(position + 2, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void releaseName(long name) {
+        ByteBuffer chunk = arena.get((int) (name >>> ARENA_CHUNK_BITS));
+        int length = chunk.getShort((int) name & (ARENA_CHUNK_BYTES - 1)) & 0xFFFF;
+        arenaGarbage += 2 + (length == NULL_NAME ? 0 : length);
+    }
+
+    // 把仍在使用的姓名复制到新的姓名区，旧的块随后由 GC 释放
+    private void compactArena() {
+        ArrayList<ByteBuffer> old = arena;
+        arena = new ArrayList<>();
+        arenaPosition = ARENA_CHUNK_BYTES;
+        arenaUsed = 0;
+        arenaGarbage = 0;
+        for (int row = 0; row < rows; row++) {
+            ByteBuffer chunk = chunk(row);
+            int offset = offset(row);
+            if (chunk.getLong(offset) == 0) {
+                continue;
+            }
+            long name = chunk.getLong(offset + 8);
+            ByteBuffer source = old.get((int) (name >>> ARENA_CHUNK_BITS));
+            int position = (int) name & (ARENA_CHUNK_BYTES - 1);
+            int length = source.getShort(position) & 0xFFFF;
+            int needed = 2 + (length == NULL_NAME ? 0 : length);
+            if (arenaPosition + needed > ARENA_CHUNK_BYTES) {
+                arena.add(ByteBuffer.allocateDirect(ARENA_CHUNK_BYTES));
+                arenaPosition = 0;
+            }
+            arena.get(arena.size() - 1).put(arenaPosition, source, position, needed);
+            chunk.putLong(offset + 8, (long) (arena.size() - 1) << ARENA_CHUNK_BITS | arenaPosition);
+            arenaPosition += needed;
+            arenaUsed += needed;
+        }
+    }
+
+    private void allocateIndex(int entries) {
+        index = ByteBuffer.allocateDirect(entries * 4);
+        indexMask = entries - 1;
+    }
+
+    private void rebuildIndex() {
+        for (int row = 0; row < rows; row++) {
+            long key = chunk(row).getLong(offset(row));
+            if (key != 0) {
+                insertIndex(key, row);
+            }
+        }
+    }
+
+    // 不小于 capacity * 4 / 3 的 2 的幂，负载因子不超过 0.75
+    private static int tableSize(int capacity) {
+        int minimum = Math.max(capacity, 8) / 3 * 4 + 4;
+        return Integer.highestOneBit(minimum - 1) << 1;
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private long keyAt(int entry) {
+        return chunk(entry - 1).getLong(offset(entry - 1));
+    }
+
+    private int find(long key) {
+        for (int slot = hash(key) & indexMask; ; slot = (slot + 1) & indexMask) {
+            int entry = index.getInt(slot * 4);
+            if (entry == 0) {
+                return -1;
+            }
+            if (keyAt(entry) == key) {
+                return entry - 1;
+            }
+        }
+    }
+
+    private void insertIndex(long key, int row) {
+        int slot = hash(key) & indexMask;
+        while (index.getInt(slot * 4) != 0) {
+            slot = (slot + 1) & indexMask;
+        }
+        index.putInt(slot * 4, row + 1);
+    }
+
+    // 与 ColumnarAppointmentStore 相同的线性探测删除，不留墓碑
+    private void removeIndex(long key) {
+        int slot = hash(key) & indexMask;
+        while (keyAt(index.getInt(slot * 4)) != key) {
+            slot = (slot + 1) & indexMask;
+        }
+        int hole = slot;
+        for (int next = (hole + 1) & indexMask; index.getInt(next * 4) != 0; next = (next + 1) & indexMask) {
+            int home = hash(keyAt(index.getInt(next * 4))) & indexMask;
+            boolean between = hole <= next ? (hole < home && home <= next) : (hole < home || home <= next);
+            if (!between) {
+                index.putInt(hole * 4, index.getInt(next * 4));
+                hole = next;
+            }
+        }
+        index.putInt(hole * 4, 0);
+    }
+}
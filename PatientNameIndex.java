@@ -0,0 +1,82 @@
+package aaa;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+// 病人姓名的二级索引，支持不区分大小写的前缀查找
+// 键为 小写姓名 + '\0' + 手机号，按键排序的 TreeMap 中同一前缀的预约是连续的一段，
+// 查找为 O(log n + 返回的个数)；作为监听器在添加、取消和 setPatientName 改名时更新
+// 姓名为 null 的预约不进入索引，任何前缀都查不到
+class PatientNameIndex implements AppointmentListener {
+    private static final char SEPARATOR = '\0';
+
+    private final TreeMap<String, Appointment> byName = new TreeMap<>();
+
+    // 从 appointments 中现有的预约建立索引
+    PatientNameIndex(Iterable<Appointment> appointments) {
+        for (Appointment appointment : appointments) {
+            add(appointment.getPatientName(), appointment);
+        }
+    }
+
+    @Override
+    public void appointmentAdded(Appointment appointment) {
+        add(appointment.getPatientName(), appointment);
+    }
+
+    @Override
+    public void appointmentCanceled(Appointment appointment) {
+        remove(appointment.getPatientName(), appointment);
+    }
+
+    @Override
+    public void patientRenamed(Appointment appointment, String oldName) {
+        remove(oldName, appointment);
+        add(appointment.getPatientName(), appointment);
+    }
+
+    // 索引中的预约数，不包括姓名为 null 的预约
+    public int size() {
+        return byName.size();
+    }
+
+    // 姓名以 prefix 开头（不区分大小写）的预约，按姓名排序，最多 limit 个
+    public List<Appointment> findByPrefix(String prefix, int limit) {
+        String from = normalize(prefix);
+        ArrayList<Appointment> result = new ArrayList<>(Math.min(limit, 16));
+        for (Map.Entry<String, Appointment> entry : byName.tailMap(from, true).entrySet()) {
+            if (result.size() >= limit || !entry.getKey().startsWith(from)) {
+                break;
+            }
+            result.add(entry.getValue());
+        }
+        return result;
+    }
+
+    static boolean matches(String name, String prefix) {
+        return name != null && normalize(name).startsWith(normalize(prefix));
+    }
+
+    private void add(String name, Appointment appointment) {
+        if (name != null) {
+            byName.put(key(name, appointment.getMobile()), appointment);
+        }
+    }
+
+    private void remove(String name, Appointment appointment) {
+        if (name != null) {
+            byName.remove(key(name, appointment.getMobile()));
+        }
+    }
+
+    private static String key(String name, String mobile) {
+        return normalize(name) + SEPARATOR + mobile;
+    }
+
+    private static String normalize(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+}
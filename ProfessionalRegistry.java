@@ -0,0 +1,177 @@
+package aaa;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+
+// 医生名册：按 id 保存唯一的 HealthProfessional 实例，O(1) 查找
+// specialization、gpType、specialty 这类重复度很高的字符串在字典中只保存一份，并分配一个小整数编号，
+// 所有医生共享同一个字符串对象，加载大量名册时可以显著减少内存
+// 同时按属性编号建立索引，可以直接列出某个专科的所有医生
+class ProfessionalRegistry {
+    // 低基数属性的字典：相同的字符串只保存一份，编号从 0 开始连续分配
+    static final class AttributeDictionary {
+        private final HashMap<String, Integer> codes = new HashMap<>();
+        private final ArrayList<String> values = new ArrayList<>();
+
+        // 返回 value 的编号，第一次出现时分配新编号
+        public int intern(String value) {
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = values.size();
+                codes.put(value, code);
+                values.add(value);
+            }
+            return code;
+        }
+
+        // 返回与 value 相等的共享字符串
+        public String canonical(String value) {
+            return value == null ? null : values.get(intern(value));
+        }
+
+        // 没有出现过的值返回 -1
+        public int codeOf(String value) {
+            Integer code = codes.get(value);
+            return code == null ? -1 : code;
+        }
+
+        public String valueOf(int code) {
+            return values.get(code);
+        }
+
+        public int size() {
+            return values.size();
+        }
+    }
+
+    private final HashMap<Integer, HealthProfessional> professionals = new HashMap<>();
+    private final AttributeDictionary specializations = new AttributeDictionary();
+    private final AttributeDictionary gpTypes = new AttributeDictionary();
+    private final AttributeDictionary specialties = new AttributeDictionary();
+    // 下标为属性编号，保存具有该属性的医生
+    private final ArrayList<ArrayList<HealthProfessional>> bySpecialization = new ArrayList<>();
+    private final ArrayList<ArrayList<HealthProfessional>> byGpType = new ArrayList<>();
+    private final ArrayList<ArrayList<HealthProfessional>> bySpecialty = new ArrayList<>();
+
+    public GeneralPractitioner generalPractitioner(int id, String name, String specialization, String gpType) {
+        return (GeneralPractitioner) register(new GeneralPractitioner(id, name, specialization, gpType));
+    }
+
+    public Specialist specialist(int id, String name, String specialization, String specialty) {
+        return (Specialist) register(new Specialist(id, name, specialization, specialty));
+    }
+
+    // 登记一个医生并返回共享实例：id 已存在且信息相同时返回已有实例，信息不同时抛出异常
+    public HealthProfessional register(HealthProfessional professional) {
+        HealthProfessional existing = professionals.get(professional.getId());
+        if (existing != null) {
+            if (!sameDetails(existing, professional)) {
+                throw new IllegalArgumentException("Health professional id " + professional.getId()
+                        + " is already registered as " + existing.getName());
+            }
+            return existing;
+        }
+        HealthProfessional canonical = canonicalCopy(professional);
+        professionals.put(canonical.getId(), canonical);
+        addToIndex(bySpecialization, specializations, canonical.getSpecialization(), canonical);
+        if (canonical instanceof GeneralPractitioner) {
+            addToIndex(byGpType, gpTypes, ((GeneralPractitioner) canonical).getGpType(), canonical);
+        } else if (canonical instanceof Specialist) {
+            addToIndex(bySpecialty, specialties, ((Specialist) canonical).getSpecialty(), canonical);
+        }
+        return canonical;
+    }
+
+    // 列出 specialization、gpType 或 specialty 等于 value 的所有医生，每个医生只出现一次
+    public List<HealthProfessional> findProfessionals(String value) {
+        List<HealthProfessional> a = lookup(bySpecialization, specializations, value);
+        List<HealthProfessional> b = lookup(byGpType, gpTypes, value);
+        List<HealthProfessional> c = lookup(bySpecialty, specialties, value);
+        if (b.isEmpty() && c.isEmpty()) {
+            return Collections.unmodifiableList(a);
+        }
+        LinkedHashSet<HealthProfessional> all = new LinkedHashSet<>(a);
+        all.addAll(b);
+        all.addAll(c);
+        return new ArrayList<>(all);
+    }
+
+    // 按 id 查找，找不到时返回 null
+    public HealthProfessional get(int id) {
+        return professionals.get(id);
+    }
+
+    public int size() {
+        return professionals.size();
+    }
+
+    public Collection<HealthProfessional> getProfessionals() {
+        return Collections.unmodifiableCollection(professionals.values());
+    }
+
+    public AttributeDictionary getSpecializations() {
+        return specializations;
+    }
+
+    public AttributeDictionary getGpTypes() {
+        return gpTypes;
+    }
+
+    public AttributeDictionary getSpecialties() {
+        return specialties;
+    }
+
+    private static void addToIndex(ArrayList<ArrayList<HealthProfessional>> index, AttributeDictionary dictionary,
+                                   String value, HealthProfessional professional) {
+        if (value == null) {
+            return;
+        }
+        int code = dictionary.intern(value);
+        while (index.size() <= code) {
+            index.add(new ArrayList<>());
+        }
+        index.get(code).add(professional);
+    }
+
+    private static List<HealthProfessional> lookup(ArrayList<ArrayList<HealthProfessional>> index,
+                                                   AttributeDictionary dictionary, String value) {
+        int code = dictionary.codeOf(value);
+        return code < 0 || code >= index.size() ? Collections.emptyList() : index.get(code);
+    }
+
+    // 用字典中的共享字符串重新构造医生对象
+    private HealthProfessional canonicalCopy(HealthProfessional professional) {
+        int id = professional.getId();
+        String name = professional.getName();
+        String specialization = specializations.canonical(professional.getSpecialization());
+        if (professional instanceof GeneralPractitioner) {
+            String gpType = gpTypes.canonical(((GeneralPractitioner) professional).getGpType());
+            return new GeneralPractitioner(id, name, specialization, gpType);
+        }
+        if (professional instanceof Specialist) {
+            String specialty = specialties.canonical(((Specialist) professional).getSpecialty());
+            return new Specialist(id, name, specialization, specialty);
+        }
+        return new HealthProfessional(id, name, specialization);
+    }
+
+    private static boolean sameDetails(HealthProfessional a, HealthProfessional b) {
+        if (a.getClass() != b.getClass()
+                || !Objects.equals(a.getName(), b.getName())
+                || !Objects.equals(a.getSpecialization(), b.getSpecialization())) {
+            return false;
+        }
+        if (a instanceof GeneralPractitioner) {
+            return Objects.equals(((GeneralPractitioner) a).getGpType(), ((GeneralPractitioner) b).getGpType());
+        }
+        if (a instanceof Specialist) {
+            return Objects.equals(((Specialist) a).getSpecialty(), ((Specialist) b).getSpecialty());
+        }
+        return true;
+    }
+}
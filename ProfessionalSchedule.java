@@ -0,0 +1,110 @@
+package aaa;
+
+// 医生一天的时间表：每一位表示一分钟是否已被占用
+// 每个预约占用 [start, start + SLOT_MINUTES)，检查冲突只需检查一两个 long，与已有预约数量无关
+final class ProfessionalSchedule {
+    // 最晚的预约从 23:59 开始，会延续到第二天的前 SLOT_MINUTES 分钟
+    private static final int MINUTES = 24 * 60 + Appointment.SLOT_MINUTES;
+    // 位图占用的 long 个数
+    static final int WORDS = (MINUTES + 63) >>> 6;
+
+    private final long[] bits;
+    private int bookings;
+
+    public ProfessionalSchedule() {
+        bits = new long[WORDS];
+    }
+
+    // 从文件中保存的位图恢复，bits 的长度为 WORDS
+    ProfessionalSchedule(long[] bits, int bookings) {
+        this.bits = bits;
+        this.bookings = bookings;
+    }
+
+    // [start, start + SLOT_MINUTES) 是否全部空闲
+    public boolean isFree(int start) {
+        return !anySet(start, start + Appointment.SLOT_MINUTES);
+    }
+
+    // 调用方需要先确认 isFree(start)
+    public void occupy(int start) {
+        setRange(start, start + Appointment.SLOT_MINUTES, true);
+        bookings++;
+    }
+
+    public void release(int start) {
+        setRange(start, start + Appointment.SLOT_MINUTES, false);
+        bookings--;
+    }
+
+    // 返回 [from, to] 内最早的空闲开始时间，没有时返回 -1
+    // 每次遇到被占用的分钟就直接跳到该段占用之后，循环次数不超过区间内的预约数
+    public int nextFree(int from, int to) {
+        int start = from;
+        while (start <= to) {
+            int busy = lastSet(start, start + Appointment.SLOT_MINUTES);
+            if (busy < 0) {
+                return start;
+            }
+            start = busy + 1;
+        }
+        return -1;
+    }
+
+    public int size() {
+        return bookings;
+    }
+
+    // 位图的第 i 个 long，用于保存到文件
+    long word(int i) {
+        return bits[i];
+    }
+
+    public boolean isEmpty() {
+        return bookings == 0;
+    }
+
+    private boolean anySet(int from, int to) {
+        int first = from >>> 6;
+        int last = (to - 1) >>> 6;
+        for (int word = first; word <= last; word++) {
+            if ((bits[word] & mask(word, from, to)) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // [from, to) 内最后一个被占用的分钟，没有时返回 -1
+    private int lastSet(int from, int to) {
+        int first = from >>> 6;
+        for (int word = (to - 1) >>> 6; word >= first; word--) {
+            long hits = bits[word] & mask(word, from, to);
+            if (hits != 0) {
+                return (word << 6) + 63 - Long.numberOfLeadingZeros(hits);
+            }
+        }
+        return -1;
+    }
+
+    private void setRange(int from, int to, boolean value) {
+        int first = from >>> 6;
+        int last = (to - 1) >>> 6;
+        for (int word = first; word <= last; word++) {
+            if (value) {
+                bits[word] |= mask(word, from, to);
+            } else {
+                bits[word] &= ~mask(word, from, to);
+            }
+        }
+    }
+
+    // 第 word 个 long 中落在 [from, to) 内的位
+    private static long mask(int word, int from, int to) {
+        int base = word << 6;
+        int lo = Math.max(from - base, 0);
+        int hi = Math.min(to - base, 64);
+        long upper = hi == 64 ? -1L : (1L << hi) - 1;
+        return upper & (-1L << lo);
+    }
+}
@@ -0,0 +1,171 @@
+package aaa;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+// 预约提醒：每个预约在开始前 lead 时间提醒一次
+// 作为监听器，添加预约时在分层时间轮上注册定时器，取消时 O(1) 删除；到期的提醒按批交给 ReminderSender
+// 后台线程只在可能有提醒到期时醒来（没有近期提醒时最多每 64 个 tick 醒来一次级联），没有提醒时一直等待
+// 预约只有一天中的时间，构造时指定预约所在的日期
+class ReminderScheduler implements AppointmentListener, AutoCloseable {
+    private static final long TICK_MILLIS = 1000;
+    private static final long MINUTE_MILLIS = 60_000;
+
+    private final ReminderSender sender;
+    private final long dayStartMillis;
+    private final long leadMillis;
+    private final int batchSize;
+    private final LongSupplier clock;
+    // 以下字段由 this 保护
+    private final TimingWheel<Appointment> wheel;
+    private final HashMap<String, TimingWheel.Timer<Appointment>> timers = new HashMap<>();
+    private long wakeupMillis = Long.MAX_VALUE;
+    private long failedBatches;
+    private boolean closed;
+    private Thread thread;
+
+    public ReminderScheduler(ReminderSender sender, LocalDate date, Duration lead, int batchSize) {
+        this(sender, date.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli(), lead.toMillis(), batchSize,
+                System::currentTimeMillis);
+    }
+
+    // 测试时可以传入手动控制的时钟，不启动后台线程，直接调用 sendDue
+    ReminderScheduler(ReminderSender sender, long dayStartMillis, long leadMillis, int batchSize, LongSupplier clock) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Invalid batch size: " + batchSize);
+        }
+        this.sender = sender;
+        this.dayStartMillis = dayStartMillis;
+        this.leadMillis = leadMillis;
+        this.batchSize = batchSize;
+        this.clock = clock;
+        this.wheel = new TimingWheel<>(TICK_MILLIS, clock.getAsLong());
+    }
+
+    // 为 manager 中已有的预约注册提醒，之后跟随 manager 的变化，并启动后台线程
+    public static ReminderScheduler attach(AppointmentManager manager, ReminderSender sender, LocalDate date,
+                                           Duration lead, int batchSize) {
+        ReminderScheduler scheduler = new ReminderScheduler(sender, date, lead, batchSize);
+        for (Appointment appointment : manager.getAppointments()) {
+            scheduler.appointmentAdded(appointment);
+        }
+        manager.addListener(scheduler);
+        scheduler.start();
+        return scheduler;
+    }
+
+    public synchronized void start() {
+        if (thread == null && !closed) {
+            thread = new Thread(this::run, "appointment-reminders");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    // 预约开始时间已过的不提醒；提醒时间已过但预约还没开始的，在下一个 tick 提醒
+    @Override
+    public synchronized void appointmentAdded(Appointment appointment) {
+        long start = dayStartMillis + appointment.getSlotMinute() * MINUTE_MILLIS;
+        if (closed || start <= clock.getAsLong()) {
+            return;
+        }
+        long due = start - leadMillis;
+        TimingWheel.Timer<Appointment> previous = timers.put(appointment.getMobile(), wheel.schedule(due, appointment));
+        if (previous != null) {
+            wheel.cancel(previous);
+        }
+        if (due < wakeupMillis) {
+            notifyAll();
+        }
+    }
+
+    @Override
+    public synchronized void appointmentCanceled(Appointment appointment) {
+        TimingWheel.Timer<Appointment> timer = timers.remove(appointment.getMobile());
+        if (timer != null) {
+            wheel.cancel(timer);
+        }
+    }
+
+    public synchronized int getPendingCount() {
+        return wheel.size();
+    }
+
+    // ReminderSender 抛出异常的批数
+    public synchronized long getFailedBatchCount() {
+        return failedBatches;
+    }
+
+    // 把到现在为止到期的提醒按批发送，返回发送的提醒数；后台线程也调用它
+    public int sendDue() {
+        ArrayList<Appointment> due = new ArrayList<>();
+        synchronized (this) {
+            wheel.advanceTo(clock.getAsLong(), due);
+            for (Appointment appointment : due) {
+                TimingWheel.Timer<Appointment> timer = timers.get(appointment.getMobile());
+                if (timer != null && timer.payload == appointment) {
+                    timers.remove(appointment.getMobile());
+                }
+            }
+        }
+        for (int from = 0; from < due.size(); from += batchSize) {
+            List<Appointment> batch = due.subList(from, Math.min(due.size(), from + batchSize));
+            try {
+                sender.send(batch);
+            } catch (Exception e) {
+                synchronized (this) {
+                    failedBatches++;
+                }
+            }
+        }
+        return due.size();
+    }
+
+    // 停止后台线程，不再发送提醒
+    @Override
+    public void close() {
+        Thread running;
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+            running = thread;
+        }
+        if (running != null) {
+            try {
+                running.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void run() {
+        while (true) {
+            synchronized (this) {
+                while (!closed) {
+                    long now = clock.getAsLong();
+                    long next = wheel.nextWakeupMillis();
+                    if (next <= now) {
+                        break;
+                    }
+                    wakeupMillis = next;
+                    try {
+                        wait(next == Long.MAX_VALUE ? 0 : next - now);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                wakeupMillis = Long.MAX_VALUE;
+                if (closed) {
+                    return;
+                }
+            }
+            sendDue();
+        }
+    }
+}
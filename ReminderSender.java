@@ -0,0 +1,30 @@
+package aaa;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// 发送预约提醒，例如通过短信网关发到 Appointment.getMobile()
+// ReminderScheduler 在自己的线程中按批调用，一批最多 batchSize 个；实现抛出的异常只影响这一批
+interface ReminderSender {
+    void send(List<Appointment> due) throws Exception;
+
+    // 测试用的本地实现：不真正发送，只记录收到的提醒
+    final class Recording implements ReminderSender {
+        private final List<Appointment> sent = new ArrayList<>();
+        private int batches;
+
+        @Override
+        public synchronized void send(List<Appointment> due) {
+            sent.addAll(due);
+            batches++;
+        }
+
+        public synchronized List<Appointment> getSent() {
+            return new ArrayList<>(sent);
+        }
+
+        public synchronized int getBatchCount() {
+            return batches;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package aaa;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// 主从复制的测试：先测量批量复制的吞吐量和逐个确认的延迟，再检查故障切换
+// 故障切换：旧主节点之后的一段记录只到达了一个从节点，另一个从节点被提升为主节点并写入更多记录；
+// 落后的从节点带着旧任期的序号重新连接时必须收到完整状态，最后所有节点的预约完全一致
+// 用法：java aaa.ReplicationFailoverCheck [预约数]
+public class ReplicationFailoverCheck {
+    private static final int PROFESSIONALS = 200;
+    private static final int SLOTS_PER_DAY = 24 * 60 / Appointment.SLOT_MINUTES;
+    private static final long TIMEOUT_MILLIS = 10_000;
+
+    private static final List<HealthProfessional> roster = new ArrayList<>();
+
+    public static void main(String[] args) throws Exception {
+        // 每个预约占用不同的医生和时段，预约数不能超过医生数 * 每天时段数
+        int bookings = Math.min(args.length > 0 ? Integer.parseInt(args[0]) : 8000, PROFESSIONALS * SLOTS_PER_DAY);
+        for (int id = 0; id < PROFESSIONALS; id++) {
+            roster.add(new GeneralPractitioner(id, "Dr. " + id, "General Medicine", "Primary Care"));
+        }
+        throughput(bookings);
+        failover();
+    }
+
+    // 两个从节点；先批量写入再等待确认，然后逐个写入并等待确认
+    private static void throughput(int bookings) throws Exception {
+        AppointmentManager leaderManager = newManager();
+        try (ReplicationLeader leader = ReplicationLeader.start(leaderManager, 0)) {
+            ReplicationFollower first = ReplicationFollower.start(leader.getPort(), newManager(), roster::get);
+            ReplicationFollower second = ReplicationFollower.start(leader.getPort(), newManager(), roster::get);
+            long start = System.nanoTime();
+            int half = bookings / 2;
+            for (int i = 0; i < half; i++) {
+                synchronized (leaderManager) {
+                    leaderManager.addAppointment(booking(i));
+                }
+            }
+            require(leader.awaitReplicated(leader.getLastSequence(), 2, TIMEOUT_MILLIS), "batch replication");
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            LatencyHistogram latency = new LatencyHistogram();
+            for (int i = half; i < bookings; i++) {
+                long begin = System.nanoTime();
+                synchronized (leaderManager) {
+                    require(leaderManager.addAppointment(booking(i)), "booking added");
+                }
+                require(leader.awaitReplicated(leader.getLastSequence(), 2, TIMEOUT_MILLIS), "acknowledged booking");
+                latency.record(System.nanoTime() - begin);
+            }
+            first.close();
+            second.close();
+            require(contents(first.getManager()).equals(contents(leaderManager)), "first follower matches");
+            require(contents(second.getManager()).equals(contents(leaderManager)), "second follower matches");
+            System.out.println("phase,records,seconds,records_per_sec,ack_p50_us,ack_p99_us");
+            System.out.printf("replicate,%d,%.3f,%.0f,%.1f,%.1f%n", half, seconds, half / seconds,
+                    latency.getPercentile(50) / 1e3, latency.getPercentile(99) / 1e3);
+        }
+    }
+
+    private static void failover() throws Exception {
+        AppointmentManager oldManager = newManager();
+        ReplicationLeader oldLeader = ReplicationLeader.start(oldManager, 0);
+        int port = oldLeader.getPort();
+        ReplicationFollower promoted = ReplicationFollower.start(port, newManager(), roster::get);
+        ReplicationFollower lagging = ReplicationFollower.start(port, newManager(), roster::get);
+        for (int i = 0; i < 1000; i++) {
+            synchronized (oldManager) {
+                oldManager.addAppointment(booking(i));
+            }
+        }
+        require(oldLeader.awaitReplicated(oldLeader.getLastSequence(), 2, TIMEOUT_MILLIS), "initial replication");
+
+        // 之后的取消和预约只到达 lagging
+        promoted.close();
+        for (int i = 0; i < 300; i++) {
+            synchronized (oldManager) {
+                oldManager.cancelAppointment(booking(i).getMobile());
+                oldManager.addAppointment(booking(5000 + i));
+            }
+        }
+        require(lagging.awaitApplied(oldLeader.getLastSequence(), TIMEOUT_MILLIS), "lagging follower applied");
+        long laggingEpoch = lagging.getEpoch();
+        long laggingSequence = lagging.getAppliedSequence();
+        lagging.close();
+        oldLeader.close();
+
+        // 新的主节点在同一端口上，任期加一，写入的记录比 lagging 多出的记录还多
+        AppointmentManager newManager = promoted.getManager();
+        try (ReplicationLeader newLeader = ReplicationLeader.start(newManager, port, promoted.getEpoch() + 1,
+                promoted.getAppliedSequence(), 1 << 16)) {
+            for (int i = 0; i < 800; i++) {
+                synchronized (newManager) {
+                    newManager.addAppointment(booking(6000 + i));
+                }
+            }
+            require(newLeader.getLastSequence() > laggingSequence, "new leader passed the lagging sequence");
+
+            ReplicationFollower rejoined = ReplicationFollower.start(port, lagging.getManager(), roster::get,
+                    laggingEpoch, laggingSequence);
+            synchronized (newManager) {
+                newManager.cancelAppointment(booking(6000).getMobile());
+            }
+            require(rejoined.awaitApplied(newLeader.getLastSequence(), TIMEOUT_MILLIS), "rejoined follower applied");
+            require(rejoined.getEpoch() == newLeader.getEpoch(), "rejoined follower adopted the new epoch");
+            require(contents(rejoined.getManager()).equals(contents(newManager)), "rejoined follower matches");
+            rejoined.close();
+            System.out.println("phase,old_epoch,new_epoch,diverged_sequence,new_sequence,appointments,result");
+            System.out.printf("failover,%d,%d,%d,%d,%d,ok%n", laggingEpoch, newLeader.getEpoch(), laggingSequence,
+                    newLeader.getLastSequence(), newManager.size());
+        }
+    }
+
+    private static AppointmentManager newManager() {
+        AppointmentManager manager = new AppointmentManager();
+        manager.setVerbose(false);
+        return manager;
+    }
+
+    private static Appointment booking(int i) {
+        int minute = i / PROFESSIONALS % SLOTS_PER_DAY * Appointment.SLOT_MINUTES;
+        return new Appointment("Patient " + i, String.valueOf(1_000_000_000L + i), Appointment.formatTimeSlot(minute),
+                roster.get(i % PROFESSIONALS));
+    }
+
+    // 手机号 -> 姓名、时段和医生
+    private static Map<String, String> contents(AppointmentManager manager) {
+        Map<String, String> result = new HashMap<>();
+        synchronized (manager) {
+            for (Appointment appointment : manager.getAppointments()) {
+                result.put(appointment.getMobile(), appointment.getPatientName() + "|" + appointment.getTimeSlot()
+                        + "|" + appointment.getHealthProfessional().getId());
+            }
+        }
+        return result;
+    }
+
+    private static void require(boolean condition, String what) {
+        if (!condition) {
+            throw new IllegalStateException("Replication check failed: " + what);
+        }
+    }
+}
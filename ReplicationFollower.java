@@ -0,0 +1,274 @@
+package aaa;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.function.IntFunction;
+
+// 主从复制的从节点：连接 ReplicationLeader，按序号把记录应用到本地的 manager，每批应用完后返回确认
+// 应用是幂等的：序号不大于已应用序号的记录直接跳过，重复的添加和不存在的取消不改变状态
+// 序号只在主节点的同一任期内有意义；任期不同时主节点先发送完整状态，本地的预约全部被替换
+// 应用时在 manager 上加锁，读取方（例如 printExistingAppointments）也应在 manager 上加锁；
+// 应用使用 restore/discard，不打印，也不通知 manager 上的监听器（改名除外）
+// 连接断开时每隔 RETRY_MILLIS 重新连接，从已应用的序号继续
+class ReplicationFollower implements Closeable {
+    private static final long RETRY_MILLIS = 100;
+
+    private final InetSocketAddress leader;
+    private final AppointmentManager manager;
+    private final IntFunction<HealthProfessional> professionals;
+    private final Thread thread;
+
+    // 以下字段由 this 保护
+    private long epoch;
+    private long appliedSequence;
+    private boolean connected;
+    private boolean closed;
+    private Socket socket;
+
+    private ReplicationFollower(InetSocketAddress leader, AppointmentManager manager,
+                                IntFunction<HealthProfessional> professionals, long epoch, long appliedSequence) {
+        this.leader = leader;
+        this.epoch = epoch;
+        this.appliedSequence = appliedSequence;
+        this.manager = manager;
+        this.professionals = professionals;
+        this.thread = new Thread(this::run, "replication-follower");
+        thread.setDaemon(true);
+    }
+
+    // 开始从本机 port 端口上的主节点复制到 manager，先收到主节点的完整状态
+    public static ReplicationFollower start(int port, AppointmentManager manager,
+                                            IntFunction<HealthProfessional> professionals) {
+        return start(port, manager, professionals, 0, 0);
+    }
+
+    // 从节点重启后继续复制：manager 已有任期 epoch 中序号 appliedSequence 为止的内容（例如从日志恢复），
+    // 主节点的任期相同时只补发之后的记录
+    public static ReplicationFollower start(int port, AppointmentManager manager,
+                                            IntFunction<HealthProfessional> professionals, long epoch,
+                                            long appliedSequence) {
+        ReplicationFollower follower = new ReplicationFollower(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), port), manager, professionals, epoch,
+                appliedSequence);
+        follower.thread.start();
+        return follower;
+    }
+
+    public AppointmentManager getManager() {
+        return manager;
+    }
+
+    // 已应用的记录所属的主节点任期，还没有收到任何内容时为 0
+    public synchronized long getEpoch() {
+        return epoch;
+    }
+
+    // 已应用的最后一条记录的序号
+    public synchronized long getAppliedSequence() {
+        return appliedSequence;
+    }
+
+    public synchronized boolean isConnected() {
+        return connected;
+    }
+
+    // 等待应用到 sequence，超时返回 false
+    public synchronized boolean awaitApplied(long sequence, long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutMillis * 1_000_000;
+        while (appliedSequence < sequence) {
+            long remaining = (deadline - System.nanoTime()) / 1_000_000;
+            if (remaining <= 0 || closed) {
+                return false;
+            }
+            wait(remaining);
+        }
+        return true;
+    }
+
+    // 在 manager 上加锁后打印，不会看到应用到一半的批次
+    public void printExistingAppointments() {
+        synchronized (manager) {
+            manager.printExistingAppointments();
+        }
+    }
+
+    // 停止复制，例如主节点故障后把这个节点提升为主节点：
+    //   follower.close();
+    //   ReplicationLeader.start(follower.getManager(), port, follower.getEpoch() + 1, follower.getAppliedSequence(), retain);
+    @Override
+    public void close() {
+        Socket current;
+        synchronized (this) {
+            closed = true;
+            current = socket;
+            notifyAll();
+        }
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException ignored) {
+                // 复制线程会发现连接已断开
+            }
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        while (true) {
+            Socket current = new Socket();
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                socket = current;
+            }
+            try (current) {
+                current.connect(leader);
+                current.setTcpNoDelay(true);
+                replicate(current);
+            } catch (IOException e) {
+                // 主节点不可用，稍后重试
+            }
+            synchronized (this) {
+                connected = false;
+                if (closed) {
+                    return;
+                }
+                try {
+                    wait(RETRY_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void replicate(Socket current) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(current.getInputStream(), 1 << 16));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(current.getOutputStream()));
+        long epoch;
+        long applied;
+        synchronized (this) {
+            epoch = this.epoch;
+            applied = appliedSequence;
+        }
+        out.writeLong(epoch);
+        out.writeLong(applied);
+        out.flush();
+        synchronized (this) {
+            connected = true;
+        }
+        // 完整状态可能分成多批，在 STATE_END 之前不确认，也不修改 manager
+        ArrayList<Appointment> state = null;
+        long stateSequence = 0;
+        while (true) {
+            // 先读完整批再在 manager 上加锁，读取方不会等待网络
+            long frameEpoch = in.readLong();
+            int count = in.readInt();
+            byte[][] records = new byte[count][];
+            for (int i = 0; i < count; i++) {
+                records[i] = new byte[in.readInt()];
+                in.readFully(records[i]);
+            }
+            ArrayList<byte[]> pending = new ArrayList<>();
+            for (byte[] record : records) {
+                DataInputStream fields = new DataInputStream(new ByteArrayInputStream(record));
+                byte type = fields.readByte();
+                long sequence = fields.readLong();
+                if (type == ReplicationLeader.STATE_BEGIN) {
+                    state = new ArrayList<>();
+                    stateSequence = sequence;
+                } else if (type == ReplicationLeader.STATE_END) {
+                    if (state == null) {
+                        throw new IOException("Unexpected end of replicated state");
+                    }
+                    synchronized (manager) {
+                        replaceState(state);
+                    }
+                    epoch = frameEpoch;
+                    applied = stateSequence;
+                    state = null;
+                } else if (state != null) {
+                    state.add(readAdd(fields));
+                } else if (frameEpoch != epoch) {
+                    // 主节点在任期不同时应先发送完整状态
+                    throw new IOException("Records from epoch " + frameEpoch + " but follower is at epoch " + epoch);
+                } else if (sequence > applied) {
+                    pending.add(record);
+                    applied = sequence;
+                }
+            }
+            if (!pending.isEmpty()) {
+                synchronized (manager) {
+                    for (byte[] record : pending) {
+                        DataInputStream fields = new DataInputStream(new ByteArrayInputStream(record));
+                        byte type = fields.readByte();
+                        fields.readLong();
+                        apply(type, fields);
+                    }
+                }
+            }
+            if (state == null) {
+                synchronized (this) {
+                    this.epoch = epoch;
+                    appliedSequence = applied;
+                    notifyAll();
+                }
+                out.writeLong(applied);
+                out.flush();
+            }
+        }
+    }
+
+    private void apply(byte type, DataInputStream fields) throws IOException {
+        if (type == ReplicationLeader.ADD) {
+            manager.restore(readAdd(fields));
+        } else if (type == ReplicationLeader.CANCEL) {
+            manager.discard(fields.readUTF());
+        } else if (type == ReplicationLeader.RENAME) {
+            String mobile = fields.readUTF();
+            manager.restoreName(mobile, AppointmentJournal.readName(fields));
+        } else {
+            throw new IOException("Unknown replication record type " + type);
+        }
+    }
+
+    private Appointment readAdd(DataInputStream fields) throws IOException {
+        String mobile = fields.readUTF();
+        String name = AppointmentJournal.readName(fields);
+        String timeSlot = fields.readUTF();
+        int id = fields.readInt();
+        HealthProfessional professional = professionals.apply(id);
+        if (professional == null) {
+            throw new IOException("Unknown health professional id: " + id);
+        }
+        return new Appointment(name, mobile, timeSlot, professional);
+    }
+
+    // 用主节点发来的完整状态替换本地的所有预约
+    private void replaceState(ArrayList<Appointment> state) {
+        ArrayList<String> mobiles = new ArrayList<>();
+        for (Appointment appointment : manager.getAppointments()) {
+            mobiles.add(appointment.getMobile());
+        }
+        for (String mobile : mobiles) {
+            manager.discard(mobile);
+        }
+        for (Appointment appointment : state) {
+            manager.restore(appointment);
+        }
+    }
+}
@@ -0,0 +1,344 @@
+package aaa;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+// 主从复制的主节点：作为 manager 的监听器，把添加、取消、改名按顺序编号记入内存中的日志，
+// 通过本机的 TCP 连接发给从节点（ReplicationFollower）
+// 每个从节点一个发送线程，一次发送目前为止的所有新记录（最多 MAX_BATCH 条），不等待上一批的确认；
+// 另一个线程读取从节点按批返回的确认序号
+// 日志只保留最近 retainRecords 条；落后更多的从节点（包括新加入的）先收到当前所有预约的完整状态
+// 对 manager 的所有操作都应在 manager 上加锁（与 BookingServer 相同），发送完整状态时也在 manager 上加锁
+// 预约在 awaitReplicated 返回 true 之后才算已确认：这时切换到已确认的从节点不会丢失它
+// 每个主节点有一个任期号（epoch），随每批记录发送；序号只在同一任期内有意义，
+// 从节点的任期与主节点不同时（例如跟随过故障前的主节点）总是先收到完整状态
+class ReplicationLeader implements AppointmentListener, Closeable {
+    static final byte ADD = 1;
+    static final byte CANCEL = 2;
+    static final byte RENAME = 3;
+    // 完整状态的开始和结束，开始记录之后是当前所有预约的 ADD 记录
+    static final byte STATE_BEGIN = 4;
+    static final byte STATE_END = 5;
+
+    private static final int MAX_BATCH = 4096;
+
+    private final AppointmentManager manager;
+    private final long epoch;
+    private final ServerSocket server;
+    private final int retainRecords;
+    private final Thread acceptor;
+
+    // 以下字段由 this 保护
+    // 序号为 firstSequence ... lastSequence 的记录
+    private final ArrayDeque<byte[]> log = new ArrayDeque<>();
+    private long firstSequence;
+    private long lastSequence;
+    private final List<Follower> followers = new ArrayList<>();
+    private boolean closed;
+
+    // 一个已连接的从节点
+    private final class Follower {
+        final Socket socket;
+        long acknowledged;
+
+        Follower(Socket socket) {
+            this.socket = socket;
+        }
+    }
+
+    private ReplicationLeader(AppointmentManager manager, int port, long epoch, long startSequence,
+                              int retainRecords) throws IOException {
+        if (retainRecords <= 0) {
+            throw new IllegalArgumentException("Invalid log retention: " + retainRecords);
+        }
+        if (epoch <= 0) {
+            throw new IllegalArgumentException("Invalid epoch: " + epoch);
+        }
+        this.manager = manager;
+        this.epoch = epoch;
+        this.retainRecords = retainRecords;
+        this.firstSequence = startSequence + 1;
+        this.lastSequence = startSequence;
+        this.server = new ServerSocket();
+        // 主节点重启后可以立即使用同一端口
+        server.setReuseAddress(true);
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        this.acceptor = new Thread(this::acceptLoop, "replication-acceptor");
+        acceptor.setDaemon(true);
+    }
+
+    // 在本机的 port 端口（0 表示任意空闲端口）上等待从节点连接，并开始记录 manager 的变化
+    // 从节点提升为主节点时，epoch 为它的任期加一，startSequence 为它已应用的序号，之后的序号接着编号；
+    // 同一个主节点重启（manager 的内容没有变）时使用原来的任期和最后的序号
+    public static ReplicationLeader start(AppointmentManager manager, int port, long epoch, long startSequence,
+                                          int retainRecords) throws IOException {
+        ReplicationLeader leader = new ReplicationLeader(manager, port, epoch, startSequence, retainRecords);
+        synchronized (manager) {
+            manager.addListener(leader);
+        }
+        leader.acceptor.start();
+        return leader;
+    }
+
+    public static ReplicationLeader start(AppointmentManager manager, int port) throws IOException {
+        return start(manager, port, 1, 0, 1 << 16);
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    // 最后一条记录的序号；某个操作之后立即读取，就是这个操作的序号
+    public synchronized long getLastSequence() {
+        return lastSequence;
+    }
+
+    public synchronized int getFollowerCount() {
+        return followers.size();
+    }
+
+    // 等待至少 followerCount 个从节点确认了 sequence 及之前的所有记录，超时返回 false
+    public synchronized boolean awaitReplicated(long sequence, int followerCount, long timeoutMillis)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutMillis * 1_000_000;
+        while (true) {
+            int acknowledged = 0;
+            for (Follower follower : followers) {
+                if (follower.acknowledged >= sequence) {
+                    acknowledged++;
+                }
+            }
+            if (acknowledged >= followerCount) {
+                return true;
+            }
+            long remaining = (deadline - System.nanoTime()) / 1_000_000;
+            if (remaining <= 0 || closed) {
+                return false;
+            }
+            wait(remaining);
+        }
+    }
+
+    @Override
+    public void appointmentAdded(Appointment appointment) {
+        append(ADD, appointment.getMobile(), appointment.getPatientName(), appointment.getTimeSlot(),
+                appointment.getHealthProfessional().getId());
+    }
+
+    @Override
+    public void appointmentCanceled(Appointment appointment) {
+        append(CANCEL, appointment.getMobile(), null, null, 0);
+    }
+
+    @Override
+    public void patientRenamed(Appointment appointment, String oldName) {
+        append(RENAME, appointment.getMobile(), appointment.getPatientName(), null, 0);
+    }
+
+    // 停止接受连接并断开所有从节点；不再记录 manager 的变化，返回后可以在同一端口上启动新的主节点
+    @Override
+    public void close() throws IOException {
+        synchronized (manager) {
+            manager.removeListener(this);
+        }
+        List<Follower> connected;
+        synchronized (this) {
+            closed = true;
+            connected = new ArrayList<>(followers);
+            notifyAll();
+        }
+        server.close();
+        // 等待接受连接的线程退出，之后端口才真正释放
+        try {
+            acceptor.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Follower follower : connected) {
+            follower.socket.close();
+        }
+    }
+
+    private void append(byte type, String mobile, String name, String timeSlot, int professionalId) {
+        synchronized (this) {
+            long sequence = lastSequence + 1;
+            log.addLast(encode(type, sequence, mobile, name, timeSlot, professionalId));
+            lastSequence = sequence;
+            if (log.size() > retainRecords) {
+                log.removeFirst();
+                firstSequence++;
+            }
+            notifyAll();
+        }
+    }
+
+    // 记录格式与 AppointmentJournal 的日志记录相同：类型、序号、手机号，再按类型写姓名、时段和医生 id
+    // 姓名可以为 null，用 AppointmentJournal.writeName 编码
+    static byte[] encode(byte type, long sequence, String mobile, String name, String timeSlot, int professionalId) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream data = new DataOutputStream(bytes);
+        try {
+            data.writeByte(type);
+            data.writeLong(sequence);
+            if (type == STATE_BEGIN || type == STATE_END) {
+                return bytes.toByteArray();
+            }
+            data.writeUTF(mobile);
+            if (type != CANCEL) {
+                AppointmentJournal.writeName(data, name);
+            }
+            if (type == ADD) {
+                data.writeUTF(timeSlot);
+                data.writeInt(professionalId);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);  // ByteArrayOutputStream 不会抛出 IOException
+        }
+        return bytes.toByteArray();
+    }
+
+    private void acceptLoop() {
+        while (true) {
+            Socket socket;
+            try {
+                socket = server.accept();
+            } catch (IOException e) {
+                return;  // 已关闭
+            }
+            Thread sender = new Thread(() -> serve(socket), "replication-sender");
+            sender.setDaemon(true);
+            sender.start();
+        }
+    }
+
+    // 读取从节点的任期和已应用的序号，先补发状态或日志，再持续发送新记录
+    private void serve(Socket socket) {
+        Follower follower = new Follower(socket);
+        try (socket) {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+            long followerEpoch = in.readLong();
+            long sent = in.readLong();
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                if (followerEpoch != epoch) {
+                    // 其他任期的序号不能比较，下面的循环会发送完整状态
+                    sent = Long.MIN_VALUE;
+                }
+                follower.acknowledged = Math.max(0, Math.min(sent, lastSequence));
+                followers.add(follower);
+            }
+            Thread acknowledgements = new Thread(() -> readAcknowledgements(follower, in), "replication-acks");
+            acknowledgements.setDaemon(true);
+            acknowledgements.start();
+            while (true) {
+                List<byte[]> batch = new ArrayList<>();
+                synchronized (this) {
+                    while (lastSequence == sent && !closed) {
+                        wait();
+                    }
+                    if (closed) {
+                        return;
+                    }
+                    // 从节点的序号比主节点还新（例如来自旧的主节点）时也发送完整状态
+                    if (sent + 1 >= firstSequence && sent < lastSequence) {
+                        int skip = (int) (sent + 1 - firstSequence);
+                        for (byte[] record : log) {
+                            if (skip > 0) {
+                                skip--;
+                            } else if (batch.size() < MAX_BATCH) {
+                                batch.add(record);
+                            } else {
+                                break;
+                            }
+                        }
+                        sent += batch.size();
+                    }
+                }
+                if (batch.isEmpty()) {
+                    sent = sendState(out);
+                } else {
+                    writeBatch(out, epoch, batch);
+                }
+            }
+        } catch (IOException e) {
+            // 从节点断开，重新连接时从它已应用的序号继续
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            synchronized (this) {
+                followers.remove(follower);
+                notifyAll();
+            }
+        }
+    }
+
+    // 从节点落后太多时发送当前所有预约，返回这个状态对应的序号
+    private long sendState(DataOutputStream out) throws IOException {
+        List<byte[]> state = new ArrayList<>();
+        long sequence;
+        synchronized (manager) {
+            synchronized (this) {
+                sequence = lastSequence;
+            }
+            state.add(encode(STATE_BEGIN, sequence, null, null, null, 0));
+            for (Appointment appointment : manager.getAppointments()) {
+                state.add(encode(ADD, sequence, appointment.getMobile(), appointment.getPatientName(),
+                        appointment.getTimeSlot(), appointment.getHealthProfessional().getId()));
+            }
+        }
+        state.add(encode(STATE_END, sequence, null, null, null, 0));
+        for (int from = 0; from < state.size(); from += MAX_BATCH) {
+            writeBatch(out, epoch, state.subList(from, Math.min(state.size(), from + MAX_BATCH)));
+        }
+        return sequence;
+    }
+
+    // 一批记录：任期、记录数，然后每条记录为 长度 + 内容
+    private static void writeBatch(DataOutputStream out, long epoch, List<byte[]> batch) throws IOException {
+        out.writeLong(epoch);
+        out.writeInt(batch.size());
+        for (byte[] record : batch) {
+            out.writeInt(record.length);
+            out.write(record);
+        }
+        out.flush();
+    }
+
+    private void readAcknowledgements(Follower follower, DataInputStream in) {
+        try {
+            while (true) {
+                long acknowledged = in.readLong();
+                synchronized (this) {
+                    follower.acknowledged = acknowledged;
+                    notifyAll();
+                }
+            }
+        } catch (IOException e) {
+            try {
+                follower.socket.close();
+            } catch (IOException ignored) {
+                // 发送线程会发现连接已断开
+            }
+        }
+    }
+}
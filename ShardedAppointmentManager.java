@@ -0,0 +1,272 @@
+package aaa;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+// 把预约按医生 id 分到多个 AppointmentManager 节点上，节点由一致性哈希环分配
+// 同一医生的预约都在同一节点上，时段检查只访问一个节点；手机号到节点的路由索引用于查找和取消预约，
+// 由每个节点上的监听器维护，所以节点内的候补转正也会更新索引
+// 候补名单也由医生所属的节点保存，应通过这里的 addToWaitlist 加入：手机号在所有节点的预约和候补中唯一，
+// 手机号在任何节点得到预约后即退出其他候补，所以节点内的候补转正不会产生重复的手机号
+// 加入或移除节点时只迁移改变归属的医生的预约和候补；迁移不经过 addAppointment 和 cancelAppointment，
+// 不打印，也不通知节点上的其他监听器
+// 节点都在同一进程中；与 AppointmentManager 一样不是线程安全的
+class ShardedAppointmentManager {
+    private static final int DEFAULT_VIRTUAL_NODES = 128;
+
+    // 一个节点和它的路由监听器
+    private final class Shard implements AppointmentListener {
+        final String name;
+        final AppointmentManager manager;
+
+        Shard(String name, AppointmentManager manager) {
+            this.name = name;
+            this.manager = manager;
+        }
+
+        @Override
+        public void appointmentAdded(Appointment appointment) {
+            routes.put(appointment.getMobile(), this);
+            // 候补转正
+            waitlisted.remove(appointment.getMobile(), this);
+        }
+
+        @Override
+        public void appointmentCanceled(Appointment appointment) {
+            routes.remove(appointment.getMobile(), this);
+        }
+    }
+
+    private final ConsistentHashRing<Shard> ring;
+    // 手机号 -> 预约所在的节点
+    private final HashMap<String, Shard> routes = new HashMap<>();
+    // 手机号 -> 候补所在的节点
+    private final HashMap<String, Shard> waitlisted = new HashMap<>();
+    private boolean verbose = true;
+    private long movedAppointments;
+
+    public ShardedAppointmentManager() {
+        this(DEFAULT_VIRTUAL_NODES);
+    }
+
+    public ShardedAppointmentManager(int virtualNodes) {
+        ring = new ConsistentHashRing<>(virtualNodes);
+    }
+
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+        for (Shard shard : ring.nodes()) {
+            shard.manager.setVerbose(verbose);
+        }
+    }
+
+    // 加入使用默认存储的节点，返回迁移到新节点的预约数
+    public int addNode(String name) {
+        return addNode(name, new AppointmentManager());
+    }
+
+    // 加入节点，manager 必须是空的（包括候补名单），例如使用 ColumnarAppointmentStore 的新管理器；
+    // 返回迁移到新节点的预约数
+    public int addNode(String name, AppointmentManager manager) {
+        if (manager.size() > 0 || manager.getWaitlistSize() > 0) {
+            throw new IllegalArgumentException("Node " + name + " must start empty");
+        }
+        Shard shard = new Shard(name, manager);
+        List<Shard> existing = ring.nodes();
+        ring.add(name, shard);
+        manager.setVerbose(verbose);
+        manager.addListener(shard);
+        int moved = 0;
+        for (Shard source : existing) {
+            moved += rebalance(source);
+        }
+        return moved;
+    }
+
+    // 移除节点，它的预约迁移到其他节点；返回迁移的预约数
+    public int removeNode(String name) {
+        Shard shard = ring.get(name);
+        if (shard == null) {
+            throw new IllegalArgumentException("Unknown node: " + name);
+        }
+        if (ring.size() == 1 && (shard.manager.size() > 0 || shard.manager.getWaitlistSize() > 0)) {
+            throw new IllegalStateException("Cannot remove the last node while it has appointments or a waitlist");
+        }
+        ring.remove(name);
+        int moved = rebalance(shard);
+        shard.manager.removeListener(shard);
+        return moved;
+    }
+
+    public int getNodeCount() {
+        return ring.size();
+    }
+
+    // 每个节点的名称和预约数，按加入顺序
+    public List<String> getNodeNames() {
+        List<String> names = new ArrayList<>();
+        for (Shard shard : ring.nodes()) {
+            names.add(shard.name);
+        }
+        return names;
+    }
+
+    public int getNodeSize(String name) {
+        Shard shard = ring.get(name);
+        return shard == null ? 0 : shard.manager.size();
+    }
+
+    // 加入和移除节点时累计迁移的预约数
+    public long getMovedAppointments() {
+        return movedAppointments;
+    }
+
+    // 医生所属的节点名称
+    public String nodeFor(HealthProfessional professional) {
+        return shardFor(professional).name;
+    }
+
+    // 手机号在所有节点中唯一；预约交给医生所属的节点
+    public boolean addAppointment(Appointment appointment) {
+        Shard shard = shardFor(appointment.getHealthProfessional());
+        if (routes.containsKey(appointment.getMobile())) {
+            if (verbose) {
+                System.out.println("Appointment already exists for mobile: " + appointment.getMobile());
+            }
+            return false;
+        }
+        if (!shard.manager.addAppointment(appointment)) {
+            return false;
+        }
+        // 节点转正候补时只检查本节点的预约，所以得到预约的手机号立即退出候补
+        Shard waiting = waitlisted.remove(appointment.getMobile());
+        if (waiting != null) {
+            waiting.manager.leaveWaitlist(appointment.getMobile());
+        }
+        return true;
+    }
+
+    // 加入医生所属节点的候补名单；手机号已有预约或已在任何节点候补时返回 false
+    public boolean addToWaitlist(Appointment appointment, int urgency) {
+        Shard shard = shardFor(appointment.getHealthProfessional());
+        if (routes.containsKey(appointment.getMobile()) || waitlisted.containsKey(appointment.getMobile())) {
+            if (verbose) {
+                System.out.println("Cannot add mobile " + appointment.getMobile() + " to the waitlist");
+            }
+            return false;
+        }
+        if (!shard.manager.addToWaitlist(appointment, urgency)) {
+            return false;
+        }
+        waitlisted.put(appointment.getMobile(), shard);
+        return true;
+    }
+
+    // 退出候补名单，不在名单中时返回 false
+    public boolean leaveWaitlist(String mobile) {
+        Shard shard = waitlisted.remove(mobile);
+        return shard != null && shard.manager.leaveWaitlist(mobile);
+    }
+
+    public int getWaitlistSize() {
+        return waitlisted.size();
+    }
+
+    // 通过路由索引找到节点，不需要询问所有节点
+    public boolean cancelAppointment(String mobile) {
+        Shard shard = routes.get(mobile);
+        if (shard == null) {
+            if (verbose) {
+                System.out.println("No appointment found for mobile: " + mobile);
+            }
+            return false;
+        }
+        return shard.manager.cancelAppointment(mobile);
+    }
+
+    public Appointment findAppointment(String mobile) {
+        Shard shard = routes.get(mobile);
+        return shard == null ? null : shard.manager.findAppointment(mobile);
+    }
+
+    public boolean isAvailable(HealthProfessional professional, String timeSlot) {
+        return shardFor(professional).manager.isAvailable(professional, timeSlot);
+    }
+
+    public int size() {
+        return routes.size();
+    }
+
+    // 按节点顺序遍历所有预约
+    public Iterable<Appointment> getAppointments() {
+        List<Shard> shards = ring.nodes();
+        return () -> new Iterator<Appointment>() {
+            private int next;
+            private Iterator<Appointment> current = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!current.hasNext() && next < shards.size()) {
+                    current = shards.get(next++).manager.getAppointments().iterator();
+                }
+                return current.hasNext();
+            }
+
+            @Override
+            public Appointment next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return current.next();
+            }
+        };
+    }
+
+    public void printExistingAppointments() {
+        if (routes.isEmpty()) {
+            System.out.println("No existing appointments.");
+            return;
+        }
+        AppointmentReportWriter.printAll(getAppointments());
+    }
+
+    private Shard shardFor(HealthProfessional professional) {
+        Shard shard = ring.nodeFor(professional.getId());
+        if (shard == null) {
+            throw new IllegalStateException("No nodes");
+        }
+        return shard;
+    }
+
+    // 把 source 中不再属于它的预约和候补迁移到所属的节点，返回迁移的预约数
+    private int rebalance(Shard source) {
+        for (Shard target : ring.nodes()) {
+            if (target != source) {
+                for (String mobile : source.manager.moveWaitlist(target.manager, id -> ring.nodeFor(id) == target)) {
+                    waitlisted.put(mobile, target);
+                }
+            }
+        }
+        List<Appointment> leaving = new ArrayList<>();
+        for (Appointment appointment : source.manager.getAppointments()) {
+            if (ring.nodeFor(appointment.getHealthProfessional().getId()) != source) {
+                leaving.add(appointment);
+            }
+        }
+        for (Appointment appointment : leaving) {
+            Appointment removed = source.manager.discard(appointment.getMobile());
+            Shard target = shardFor(removed.getHealthProfessional());
+            // 一个医生的预约总是一起迁移，目标节点上不会有这个医生的预约，手机号也是全局唯一的
+            if (!target.manager.restore(removed)) {
+                throw new IllegalStateException("Cannot move appointment for mobile: " + removed.getMobile());
+            }
+            routes.put(removed.getMobile(), target);
+        }
+        movedAppointments += leaving.size();
+        return leaving.size();
+    }
+}
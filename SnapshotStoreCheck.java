@@ -0,0 +1,130 @@
+package aaa;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+// 快照一致性检查：在每种存储引擎上随机添加、取消和改名，定期获取快照，
+// 检查快照与当时的预约完全一致，并且之后的修改（包括压缩）不会改变已获取的快照
+// 列式、映射文件和堆外存储每次返回新的 Appointment 视图，这里覆盖了按对象查找会丢失取消和改名的情况
+public class SnapshotStoreCheck {
+    private static final int PROFESSIONALS = 20;
+    private static final int SLOTS_PER_DAY = 24 * 60 / Appointment.SLOT_MINUTES;
+
+    public static void main(String[] args) throws IOException {
+        int operations = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        List<HealthProfessional> professionals = new ArrayList<>();
+        HashMap<Integer, HealthProfessional> byId = new HashMap<>();
+        for (int id = 0; id < PROFESSIONALS; id++) {
+            HealthProfessional professional = new GeneralPractitioner(id, "Dr. " + id, "General Medicine", "Primary Care");
+            professionals.add(professional);
+            byId.put(id, professional);
+        }
+
+        System.out.println("store,operations,snapshots,result");
+        check("heap", new AppointmentManager(), professionals, operations);
+        check("columnar", new AppointmentManager(new ColumnarAppointmentStore(byId::get)), professionals, operations);
+        check("offheap", new AppointmentManager(new OffHeapAppointmentStore(byId::get)), professionals, operations);
+
+        // 映射文件中预先有一些预约，取消和改名它们时存储返回的也是视图
+        Path file = Files.createTempFile("snapshot-check", ".bin");
+        try {
+            List<Appointment> initial = new ArrayList<>();
+            for (int i = 0; i < SLOTS_PER_DAY; i++) {
+                initial.add(booking(professionals, i, i));
+            }
+            MappedAppointmentFile.write(file, professionals, initial);
+            try (MappedAppointmentFile mapped = MappedAppointmentFile.open(file)) {
+                check("mapped", new AppointmentManager(new MappedAppointmentStore(mapped)), professionals, operations);
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static void check(String name, AppointmentManager manager, List<HealthProfessional> professionals,
+                              int operations) {
+        manager.setVerbose(false);
+        manager.enableSnapshots();
+        Random random = new Random(42);
+        // 手机号 -> 当前姓名，按预约顺序
+        LinkedHashMap<String, String> expected = new LinkedHashMap<>();
+        for (Appointment appointment : manager.getAppointments()) {
+            expected.put(appointment.getMobile(), appointment.getPatientName());
+        }
+        List<AppointmentSnapshot> held = new ArrayList<>();
+        List<Map<String, String>> heldExpected = new ArrayList<>();
+        int snapshots = 0;
+        for (int i = 0; i < operations; i++) {
+            int key = random.nextInt(PROFESSIONALS * SLOTS_PER_DAY);
+            String mobile = mobile(key);
+            int action = random.nextInt(3);
+            if (action == 0) {
+                Appointment appointment = booking(professionals, key, i);
+                if (manager.addAppointment(appointment)) {
+                    expected.put(mobile, appointment.getPatientName());
+                }
+            } else if (action == 1) {
+                if (manager.cancelAppointment(mobile)) {
+                    expected.remove(mobile);
+                }
+            } else {
+                Appointment appointment = manager.findAppointment(mobile);
+                if (appointment != null) {
+                    // 姓名可以为 null
+                    String renamed = i % 7 == 0 ? null : "Renamed " + i;
+                    appointment.setPatientName(renamed);
+                    expected.put(mobile, renamed);
+                }
+            }
+            if (i % 1000 == 0) {
+                AppointmentSnapshot snapshot = manager.snapshot();
+                verify(name, snapshot, expected);
+                snapshots++;
+                // 保留一部分快照到最后，其余立即关闭，让压缩有机会运行
+                if (held.size() < 8 && random.nextInt(10) == 0) {
+                    held.add(snapshot);
+                    heldExpected.add(new HashMap<>(expected));
+                } else {
+                    snapshot.close();
+                }
+            }
+        }
+        for (int i = 0; i < held.size(); i++) {
+            verify(name, held.get(i), heldExpected.get(i));
+            held.get(i).close();
+        }
+        try (AppointmentSnapshot snapshot = manager.snapshot()) {
+            verify(name, snapshot, expected);
+        }
+        System.out.printf("%s,%d,%d,ok%n", name, operations, snapshots + 1);
+    }
+
+    private static void verify(String name, AppointmentSnapshot snapshot, Map<String, String> expected) {
+        Map<String, String> actual = new HashMap<>();
+        for (Appointment appointment : snapshot) {
+            actual.put(appointment.getMobile(), appointment.getPatientName());
+        }
+        if (snapshot.size() != expected.size() || !actual.equals(expected)) {
+            throw new IllegalStateException(name + ": snapshot " + snapshot.getVersion() + " has " + actual.size()
+                    + " appointments (size " + snapshot.size() + "), expected " + expected.size());
+        }
+    }
+
+    // key 决定医生、时段和手机号，同一个 key 的预约互相冲突
+    private static Appointment booking(List<HealthProfessional> professionals, int key, int serial) {
+        int minute = key % SLOTS_PER_DAY * Appointment.SLOT_MINUTES;
+        return new Appointment("Patient " + serial, mobile(key), Appointment.formatTimeSlot(minute),
+                professionals.get(key / SLOTS_PER_DAY));
+    }
+
+    private static String mobile(int key) {
+        return String.valueOf(1_000_000_000L + key);
+    }
+}
@@ -0,0 +1,183 @@
+package aaa;
+
+import java.util.List;
+
+// 分层的哈希时间轮：LEVELS 层，每层 WHEEL_SIZE 个槽，第 i 层每个槽跨 WHEEL_SIZE^i 个 tick
+// 定时器挂在槽的双向链表上，添加和取消都是 O(1)；时间前进时每个 tick 只处理第 0 层的一个槽，
+// 第 0 层转完一圈时把上一层的一个槽重新分配到下面的层（级联）
+// 超出最高层范围的定时器放在最高层，到期前会被级联回来
+// 不是线程安全的，由调用者加锁
+final class TimingWheel<T> {
+    private static final int WHEEL_BITS = 6;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final int LEVELS = 4;
+
+    // 一个定时器，cancel 时使用
+    static final class Timer<T> {
+        final T payload;
+        final long deadline;
+        private Timer<T> prev;
+        private Timer<T> next;
+        // 所在的层和槽，level 为 -1 表示已经到期或已经取消
+        private int level = -1;
+        private int slot;
+
+        private Timer(T payload, long deadline) {
+            this.payload = payload;
+            this.deadline = deadline;
+        }
+
+        boolean isPending() {
+            return level >= 0;
+        }
+    }
+
+    private final long tickMillis;
+    private final Timer<T>[][] wheels;
+    // 每层的定时器个数，用于在没有定时器时跳过空转
+    private final int[] counts = new int[LEVELS];
+    private long currentTick;
+    private int size;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    TimingWheel(long tickMillis, long nowMillis) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("Invalid tick: " + tickMillis);
+        }
+        this.tickMillis = tickMillis;
+        this.currentTick = nowMillis / tickMillis;
+        this.wheels = new Timer[LEVELS][];
+        for (int level = 0; level < LEVELS; level++) {
+            wheels[level] = new Timer[WHEEL_SIZE];
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // 在 deadlineMillis 之后第一次 advanceTo 时到期；已经过期的定时器在下一个 tick 到期
+    public Timer<T> schedule(long deadlineMillis, T payload) {
+        long tick = Math.max(currentTick + 1, (deadlineMillis + tickMillis - 1) / tickMillis);
+        Timer<T> timer = new Timer<>(payload, tick);
+        insert(timer);
+        size++;
+        return timer;
+    }
+
+    // 已经到期或已经取消时返回 false
+    public boolean cancel(Timer<T> timer) {
+        if (!timer.isPending()) {
+            return false;
+        }
+        unlink(timer);
+        size--;
+        return true;
+    }
+
+    // 时间前进到 nowMillis，把到期的定时器的 payload 按到期顺序加入 expired
+    public void advanceTo(long nowMillis, List<T> expired) {
+        long target = nowMillis / tickMillis;
+        while (currentTick < target) {
+            if (size == 0) {
+                currentTick = target;
+                return;
+            }
+            if (counts[0] == 0) {
+                // 第 0 层为空时直接跳到下一次级联
+                long boundary = (currentTick | WHEEL_MASK) + 1;
+                if (boundary > target) {
+                    currentTick = target;
+                    return;
+                }
+                currentTick = boundary - 1;
+            }
+            currentTick++;
+            cascade();
+            Timer<T>[] bucket = wheels[0];
+            int slot = (int) (currentTick & WHEEL_MASK);
+            Timer<T> timer = bucket[slot];
+            while (timer != null) {
+                Timer<T> next = timer.next;
+                unlink(timer);
+                size--;
+                expired.add(timer.payload);
+                timer = next;
+            }
+        }
+    }
+
+    // 下一个可能有定时器到期的时间，没有定时器时返回 Long.MAX_VALUE；用于决定可以睡多久
+    // 下一次级联可能带来更早的定时器，所以不会晚于第 0 层转完这一圈的时间
+    public long nextWakeupMillis() {
+        if (size == 0) {
+            return Long.MAX_VALUE;
+        }
+        long boundary = (currentTick | WHEEL_MASK) + 1;
+        if (counts[0] > 0) {
+            for (long tick = currentTick + 1; tick < boundary; tick++) {
+                if (wheels[0][(int) (tick & WHEEL_MASK)] != null) {
+                    return tick * tickMillis;
+                }
+            }
+        }
+        return boundary * tickMillis;
+    }
+
+    // 第 0 层转完一圈时，把上面各层当前的槽重新分配到下面
+    private void cascade() {
+        long tick = currentTick;
+        for (int level = 1; level < LEVELS && (tick & WHEEL_MASK) == 0; level++) {
+            tick >>>= WHEEL_BITS;
+            Timer<T>[] bucket = wheels[level];
+            int slot = (int) (tick & WHEEL_MASK);
+            Timer<T> timer = bucket[slot];
+            while (timer != null) {
+                Timer<T> next = timer.next;
+                unlink(timer);
+                insert(timer);
+                timer = next;
+            }
+        }
+    }
+
+    private void insert(Timer<T> timer) {
+        long delta = timer.deadline - currentTick;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (WHEEL_BITS * (level + 1))) {
+            level++;
+        }
+        long position = timer.deadline;
+        if (level == LEVELS - 1 && delta >= 1L << (WHEEL_BITS * LEVELS)) {
+            // 超出范围，放在最高层最远的槽，级联时重新计算
+            position = currentTick + (1L << (WHEEL_BITS * LEVELS)) - 1;
+        }
+        int slot = (int) ((position >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+        Timer<T>[] bucket = wheels[level];
+        timer.level = level;
+        timer.slot = slot;
+        timer.prev = null;
+        timer.next = bucket[slot];
+        if (timer.next != null) {
+            timer.next.prev = timer;
+        }
+        bucket[slot] = timer;
+        counts[level]++;
+    }
+
+    private void unlink(Timer<T> timer) {
+        if (timer.prev != null) {
+            timer.prev.next = timer.next;
+        } else {
+            wheels[timer.level][timer.slot] = timer.next;
+        }
+        if (timer.next != null) {
+            timer.next.prev = timer.prev;
+        }
+        counts[timer.level]--;
+        timer.level = -1;
+        timer.prev = null;
+        timer.next = null;
+    }
+}
@@ -0,0 +1,122 @@
+package aaa;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.IntPredicate;
+
+// 每个医生每个时段的候补名单：紧急程度高的优先，相同时先加入的优先
+// 每个时段一个按优先级排序的 TreeSet，每个医生的时段按开始分钟排序，另有手机号索引，
+// 加入、按手机号退出都是 O(log n)，查找与一段时间重叠的候补只访问有候补的开始分钟
+// 同一个手机号同时只能候补一个时段
+final class Waitlist {
+    private static final class Entry implements Comparable<Entry> {
+        final Appointment appointment;
+        final int urgency;
+        final long sequence;
+
+        Entry(Appointment appointment, int urgency, long sequence) {
+            this.appointment = appointment;
+            this.urgency = urgency;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            if (urgency != other.urgency) {
+                return urgency > other.urgency ? -1 : 1;
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+
+    // 医生 id -> 开始分钟 -> 候补
+    private final HashMap<Integer, TreeMap<Integer, TreeSet<Entry>>> queues = new HashMap<>();
+    private final HashMap<String, Entry> byMobile = new HashMap<>();
+    private long nextSequence;
+
+    // 手机号已经在候补名单中时返回 false
+    public boolean add(Appointment appointment, int urgency) {
+        if (byMobile.containsKey(appointment.getMobile())) {
+            return false;
+        }
+        Entry entry = new Entry(appointment, urgency, nextSequence++);
+        byMobile.put(appointment.getMobile(), entry);
+        queues.computeIfAbsent(appointment.getHealthProfessional().getId(), id -> new TreeMap<>())
+                .computeIfAbsent(appointment.getSlotMinute(), minute -> new TreeSet<>()).add(entry);
+        return true;
+    }
+
+    // 退出候补，返回原来的候补预约，没有时返回 null
+    public Appointment remove(String mobile) {
+        Entry entry = byMobile.remove(mobile);
+        if (entry == null) {
+            return null;
+        }
+        int professionalId = entry.appointment.getHealthProfessional().getId();
+        TreeMap<Integer, TreeSet<Entry>> minutes = queues.get(professionalId);
+        TreeSet<Entry> queue = minutes.get(entry.appointment.getSlotMinute());
+        queue.remove(entry);
+        if (queue.isEmpty()) {
+            minutes.remove(entry.appointment.getSlotMinute());
+            if (minutes.isEmpty()) {
+                queues.remove(professionalId);
+            }
+        }
+        return entry.appointment;
+    }
+
+    // 开始分钟在 [from, to] 内并且 startable 接受的候补中优先级最高的一个，没有时返回 null
+    public Appointment peek(int professionalId, int from, int to, IntPredicate startable) {
+        TreeMap<Integer, TreeSet<Entry>> minutes = queues.get(professionalId);
+        if (minutes == null) {
+            return null;
+        }
+        Entry best = null;
+        for (Map.Entry<Integer, TreeSet<Entry>> queue : minutes.subMap(from, true, to, true).entrySet()) {
+            Entry first = queue.getValue().first();
+            if ((best == null || first.compareTo(best) < 0) && startable.test(queue.getKey())) {
+                best = first;
+            }
+        }
+        return best == null ? null : best.appointment;
+    }
+
+    public boolean contains(String mobile) {
+        return byMobile.containsKey(mobile);
+    }
+
+    public int size() {
+        return byMobile.size();
+    }
+
+    // 把 professionalIds 中医生的候补移到 target，保持原来的紧急程度和先后顺序；返回移走的手机号
+    // target 中不能已有这些医生的候补
+    public List<String> moveTo(Waitlist target, IntPredicate professionalIds) {
+        List<Entry> moving = new ArrayList<>();
+        for (Entry entry : byMobile.values()) {
+            if (professionalIds.test(entry.appointment.getHealthProfessional().getId())) {
+                moving.add(entry);
+            }
+        }
+        moving.sort((a, b) -> Long.compare(a.sequence, b.sequence));
+        List<String> mobiles = new ArrayList<>();
+        for (Entry entry : moving) {
+            remove(entry.appointment.getMobile());
+            if (!target.add(entry.appointment, entry.urgency)) {
+                throw new IllegalStateException("Mobile already waitlisted: " + entry.appointment.getMobile());
+            }
+            mobiles.add(entry.appointment.getMobile());
+        }
+        return mobiles;
+    }
+
+    public int size(int professionalId, int minute) {
+        TreeMap<Integer, TreeSet<Entry>> minutes = queues.get(professionalId);
+        TreeSet<Entry> queue = minutes == null ? null : minutes.get(minute);
+        return queue == null ? 0 : queue.size();
+    }
+}